@@ -1,19 +1,42 @@
 package com.dexmap;
 
 import com.dexmap.config.DexmapConfig;
+import com.dexmap.data.TileStore;
+import com.dexmap.export.TileServer;
+import com.dexmap.input.DexmapCommands;
 import com.dexmap.input.KeybindingManager;
+import com.dexmap.metrics.MapMetrics;
+import com.dexmap.metrics.MetricsCsv;
+import com.dexmap.render.BlockColorCache;
 import com.dexmap.render.HudRenderer;
+import com.dexmap.render.LodPyramid;
+import com.dexmap.render.MapStyle;
+import com.dexmap.render.TerrainShader;
+import com.dexmap.render.TileAtlas;
+import com.dexmap.render.TileRasterizer;
 import com.dexmap.world.ChunkScanner;
+import java.io.IOException;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientChunkEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
+import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.resource.ResourceType;
 
 public class DexmapClient implements ClientModInitializer {
 	private static DexmapClient instance;
 	private ChunkScanner chunkScanner;
 	private HudRenderer hudRenderer;
+	private TileRasterizer tileRasterizer;
+	private TileStore tileStore;
+	private TileAtlas tileAtlas;
+	// LOD tiles are always shaded pixels, so they get their own atlas
+	private TileAtlas lodAtlas;
 	private DexmapConfig config;
+	private MetricsCsv metricsCsv;
+	private TileServer tileServer;
 
 	@Override
 	public void onInitializeClient() {
@@ -21,11 +44,26 @@ public class DexmapClient implements ClientModInitializer {
 
 		// Initialize components
 		config = new DexmapConfig();
-		chunkScanner = new ChunkScanner();
+		tileStore = new TileStore();
+		MapStyle style = MapStyle.from(config);
+		tileAtlas = new TileAtlas(style.textureSize(), style.gpuShading());
+		lodAtlas = new TileAtlas(style.size());
+		tileRasterizer = new TileRasterizer(config.rasterThreads, config.asyncScanning, tileStore, style,
+				config.uploadBudgetMicros, config.lodCacheBytes);
+		chunkScanner = new ChunkScanner(tileStore, style.textureSize(),
+				config.tileCacheBytes, config.compactTileCacheBytes, config.blockUpdateDebounceMs,
+				config.chunkScanRadius);
 		hudRenderer = new HudRenderer();
+		metricsCsv = new MetricsCsv(MinecraftClient.getInstance().runDirectory.toPath());
+		registerGauges();
 
 		// Register keybindings
 		KeybindingManager.register();
+		DexmapCommands.register();
+
+		if (config.tileServer) {
+			startTileServer();
+		}
 
 		// Register event callbacks
 		registerEvents();
@@ -40,15 +78,87 @@ public class DexmapClient implements ClientModInitializer {
 
 		// Tick events for updates
 		ClientTickEvents.END_CLIENT_TICK.register(client -> {
+			// Also runs with a null world after disconnecting, which flushes the tile store
+			chunkScanner.updateWorld(client, client.world);
+			applyStyle();
+			chunkScanner.flushBlockUpdates();
+			// Workers grow the LOD pyramid while exploring whether or not the map is open
+			tileRasterizer.getLodPyramid().sweep(lodAtlas);
 			if (client.player != null) {
 				chunkScanner.updatePlayerPosition(client.player);
 			}
+
+			MapMetrics.Snapshot metrics = MapMetrics.tick(System.currentTimeMillis());
+			if (metrics != null && config.metricsCsv) {
+				metricsCsv.append(metrics);
+			}
 		});
 
+		// Make sure batched tile writes reach disk before the game exits
+		ClientLifecycleEvents.CLIENT_STOPPING.register(client -> {
+			if (tileServer != null) tileServer.stop();
+			tileRasterizer.shutdown();
+			tileStore.shutdown();
+			metricsCsv.close();
+		});
+
+		// Resource packs can change block and map colors
+		ResourceManagerHelper.get(ResourceType.CLIENT_RESOURCES)
+				.registerReloadListener(BlockColorCache.reloadListener());
+
+		// Core shader for the GPU shading path
+		TerrainShader.register();
+
 		// HUD rendering using the standard HudRenderCallback
 		HudRenderCallback.EVENT.register(hudRenderer::onHudRender);
 	}
 
+	private void startTileServer() {
+		try {
+			tileServer = new TileServer(config.tileServerPort, config.tileServerThreads);
+			tileServer.start();
+		} catch (IOException e) {
+			Dexmap.LOGGER.error("Failed to start the Dexmap tile server on port {}: {}",
+					config.tileServerPort, e.getMessage());
+			tileServer = null;
+		}
+	}
+
+	/**
+	 * Picks up changed resolution or shading settings. Tiles are re-shaded
+	 * from their stored column models as they are drawn, visible ones first;
+	 * a change of atlas tile size or content (resolution, or switching
+	 * between CPU and GPU shading) also drops all textures. With GPU
+	 * shading, chunk tiles only need new shader uniforms.
+	 */
+	private void applyStyle() {
+		MapStyle style = MapStyle.from(config);
+		MapStyle current = tileRasterizer.getStyle();
+		if (style.equals(current)) return;
+
+		if (style.size() != current.size()) {
+			tileRasterizer.getLodPyramid().clear(lodAtlas);
+			lodAtlas.setTileSize(style.size(), false);
+		}
+		if (style.textureSize() != current.textureSize() || style.gpuShading() != current.gpuShading()) {
+			chunkScanner.getMapData().releaseTextures(style.textureSize() * style.textureSize() * 4);
+			tileAtlas.setTileSize(style.textureSize(), style.gpuShading());
+		}
+		tileRasterizer.setStyle(style);
+		Dexmap.LOGGER.info("Dexmap map style changed: {}", style);
+	}
+
+	private void registerGauges() {
+		MapMetrics.gauge(MapMetrics.RASTER_QUEUE, tileRasterizer::getInFlightCount);
+		MapMetrics.gauge(MapMetrics.UPLOAD_QUEUE, tileRasterizer::getUploadBacklog);
+		MapMetrics.gauge(MapMetrics.WRITE_QUEUE, tileStore::getPendingWriteCount);
+		MapMetrics.gauge(MapMetrics.RESIDENT_TILES, () -> chunkScanner.getMapData().getResidentCount());
+		MapMetrics.gauge(MapMetrics.LOD_TILES, () -> tileRasterizer.getLodPyramid().getResidentCount());
+		MapMetrics.gauge(MapMetrics.TEXTURE_BYTES, () -> tileAtlas.getNativeBytes() + lodAtlas.getNativeBytes());
+		MapMetrics.gauge(MapMetrics.COMPACT_TILES, () -> chunkScanner.getMapData().getCompactCount());
+		MapMetrics.gauge(MapMetrics.COMPACT_BYTES, () -> chunkScanner.getMapData().getCompactBytes());
+	}
+
 	public static DexmapClient getInstance() {
 		return instance;
 	}
@@ -57,6 +167,26 @@ public class DexmapClient implements ClientModInitializer {
 		return chunkScanner;
 	}
 
+	public TileRasterizer getTileRasterizer() {
+		return tileRasterizer;
+	}
+
+	public LodPyramid getLodPyramid() {
+		return tileRasterizer.getLodPyramid();
+	}
+
+	public TileAtlas getTileAtlas() {
+		return tileAtlas;
+	}
+
+	public TileAtlas getLodAtlas() {
+		return lodAtlas;
+	}
+
+	public TileStore getTileStore() {
+		return tileStore;
+	}
+
 	public DexmapConfig getConfig() {
 		return config;
 	}
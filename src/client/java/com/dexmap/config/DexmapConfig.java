@@ -28,18 +28,55 @@ public class DexmapConfig {
     // Canopy rendering
     public float canopyPatternStrength = 1.0f; // 0–2, 0 disables
 
+    // Shade chunk tiles in a shader at draw time instead of on the CPU; shading and
+    // resolution changes then cost nothing, and tile uploads are ~4x smaller
+    public boolean gpuShading = false;
+
     // Biome colors
     // -1 = use Minecraft’s own biome blend setting; 0..7 = override radius
     public int biomeBlendOverride = -1;
 
+    // Background raster workers; 0 = pick from core count (1..4)
+    public int rasterThreads = 0;
+
+    // Native texture memory budget for resident chunk tiles (64 MiB = 4096 tiles at 64 px)
+    public long tileCacheBytes = 64L << 20;
+
+    // Heap for evicted tiles kept as palette-indexed copies (1-3 KiB each, ~15k tiles at 32 MiB);
+    // they come back without sampling or disk reads
+    public long compactTileCacheBytes = 32L << 20;
+
+    // Heap for zoomed-out LOD tiles (16 KiB each at 64 px, 2048 tiles at 32 MiB); the rest page in from disk
+    public long lodCacheBytes = 32L << 20;
+
+    // Render-thread time per frame for uploading finished tiles; the rest wait for the next frame
+    public long uploadBudgetMicros = 2000;
+
+    // Block changes are batched per chunk for this long before the tile is re-rendered
+    public long blockUpdateDebounceMs = 250;
+
+    // Chunks loading within this many chunks of the player are rasterized before they are drawn
+    public int chunkScanRadius = 8;
+    // Off: rasterize on the client thread instead of the worker pool (debugging only)
+    public boolean asyncScanning = true;
+
+    // Serve the explored map to a browser at http://127.0.0.1:<port>/ (localhost only)
+    public boolean tileServer = false;
+    public int tileServerPort = 8765;
+    // Request threads; past a short queue the server stops accepting until they catch up
+    public int tileServerThreads = 2;
+
+    // Debug: pipeline timings, queues and cache stats next to the minimap
+    public boolean metricsOverlay = false;
+    // Debug: append the same metrics once a second to <game dir>/dexmap/metrics/*.csv
+    public boolean metricsCsv = false;
+
     // Filtering preference (optional; currently forcing nearest in screen)
     public boolean sharpZoomedIn = true;
 
     // Legacy / compatibility
     public float worldMapScale = 1.0f; // unused by new screen but kept to avoid breaking code
-    public int chunkScanRadius = 8;    // unused since we don’t scan per-block in background
-    public boolean asyncScanning = true;
-    public int maxCachedChunks = 1000;
+    public int maxCachedChunks = 1000; // superseded by tileCacheBytes
 
     public DexmapConfig() {}
 
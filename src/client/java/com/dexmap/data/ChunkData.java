@@ -1,66 +1,421 @@
 package com.dexmap.data;
 
-import com.dexmap.render.MinecraftStyleRenderer;
+import com.dexmap.DexmapClient;
+import com.dexmap.metrics.MapMetrics;
+import com.dexmap.render.ColumnMask;
+import com.dexmap.render.CompactTile;
+import com.dexmap.render.TileAtlas;
+import com.dexmap.render.TileRasterizer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import net.minecraft.client.MinecraftClient;
-import net.minecraft.client.texture.NativeImageBackedTexture;
+import net.minecraft.client.texture.NativeImage;
 import net.minecraft.client.world.ClientWorld;
-import net.minecraft.util.Identifier;
 import net.minecraft.util.math.ChunkPos;
 
+/**
+ * One chunk tile. Its lifecycle is a {@link TileState} packed with a
+ * generation counter into a single word and moved along by CAS, so the
+ * render thread and the raster workers never take a lock over it. Every
+ * invalidate or release starts a new generation; a worker's result only
+ * lands if its generation is still current when it arrives.
+ */
 public class ChunkData {
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(ChunkData.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final ChunkPos position;
-    private NativeImageBackedTexture cachedTexture;
-    private final Identifier textureId;
-    private boolean textureReady = false;
+    // Slot in the shared tile atlas; only touched on the render thread. A texture stays
+    // here, possibly from an older generation, until the new one replaces it.
+    private int atlasSlot = TileAtlas.NO_SLOT;
+
+    // Generation in the high half, TileState ordinal in the low half. A field rather than an
+    // AtomicLong to keep an object per tile off the heap.
+    private volatile long state = pack(0, TileState.EMPTY);
+    // The tile store holds an up-to-date copy, so a re-raster can page it in instead of sampling
+    private volatile boolean persisted = false;
+
+    // Block columns changed since the last raster, waiting for the debounce; client thread only
+    private final long[] dirtyColumns = ColumnMask.create();
+    // Edge columns whose shading is stale because a neighbour's border changed
+    private final long[] seamColumns = ColumnMask.create();
+    private long dirtySince;
+    // Bumped after every block change applied to the chunk; workers compare it across a world read.
+    // Written on the client thread only.
+    private volatile int edits;
+    // ColumnBuffer.EDGE_* sides last shaded against real neighbour heights
+    private volatile int seamEdges;
+
+    // MapStyle stamp of the current texture and compact copy. Render thread only.
+    private int styleStamp;
+
+    // Palette-indexed copy of the current image; outlives the texture when the cache
+    // demotes the tile, so it can be re-uploaded without a raster. Render thread only.
+    private CompactTile compact;
+
+    // CLOCK cache state, owned by MapData
+    private MapData owner;
+    private volatile boolean referenced = true;
+    int clockIndex = -1;
+    // Demotion stamp and accounted compact size while demoted, owned by MapData
+    long demotedSeq;
+    int demotedBytes;
 
     public ChunkData(ChunkPos position) {
         this.position = position;
-        this.textureId =
-                Identifier.of("dexmap", "chunk_" + position.x + "_" + position.z);
     }
 
-    public Identifier getTextureId(ClientWorld world) {
-        if (!textureReady && world != null) {
-            buildTexture(world);
+    /**
+     * Returns the tile's atlas slot if it has been uploaded, otherwise queues
+     * a background raster (or, for a demoted tile, the upload of its compact
+     * copy) and returns {@link TileAtlas#NO_SLOT} so the caller can draw a
+     * placeholder. A tile drawn in an outdated style is re-shaded while its
+     * current texture stays on screen, so visible tiles are restyled first.
+     */
+    public int getAtlasSlot(ClientWorld world) {
+        referenced = true;
+        long w = state;
+        TileState s = stateOf(w);
+        if ((s == TileState.UPLOADED || s == TileState.DEMOTED) && styleStamp != currentStyle()) {
+            dropCompact();
+            STATE.compareAndSet(this, with(w, TileState.UPLOADED), with(w, TileState.EMPTY));
+            w = state;
+            s = stateOf(w);
         }
-        return textureId;
+        if (s == TileState.DEMOTED) {
+            rehydrate(w);
+        } else if (s.needsRaster() && world != null) {
+            requestRaster(world, w);
+        }
+        if (atlasSlot != TileAtlas.NO_SLOT) {
+            MapMetrics.CACHE_HITS.increment();
+            return atlasSlot;
+        }
+        MapMetrics.CACHE_MISSES.increment();
+        return TileAtlas.NO_SLOT;
+    }
+
+    public int getAtlasSlot() {
+        return getAtlasSlot(MinecraftClient.getInstance().world);
+    }
+
+    private static int currentStyle() {
+        return DexmapClient.getInstance().getTileRasterizer().getStyleStamp();
     }
 
-    // Convenience no-arg overload to fix HudRenderer call sites
-    public Identifier getTextureId() {
-        ClientWorld world = MinecraftClient.getInstance().world;
-        if (!textureReady && world != null) {
-            buildTexture(world);
+    /**
+     * Queues a raster for a tile that has never been drawn, so it is ready
+     * by the time it scrolls into view. Unlike {@link #getAtlasSlot} this
+     * doesn't count as a use of the tile.
+     */
+    public void warm(ClientWorld world) {
+        long w = state;
+        if (stateOf(w).needsRaster()) requestRaster(world, w);
+    }
+
+    private void requestRaster(ClientWorld world, long w) {
+        long queued = with(w, TileState.QUEUED);
+        if (!STATE.compareAndSet(this, w, queued)) return;
+
+        TileRasterizer rasterizer = DexmapClient.getInstance().getTileRasterizer();
+        if (!rasterizer.submit(this, world)) {
+            STATE.compareAndSet(this, queued, w);
         }
-        return textureId;
     }
 
-    private void buildTexture(ClientWorld world) {
-        if (cachedTexture != null) {
-            cachedTexture.close();
-            cachedTexture = null;
+    private void rehydrate(long w) {
+        // Decoding is immediate, so the compact copy skips straight to RASTERED
+        if (!STATE.compareAndSet(this, w, with(w, TileState.RASTERED))) return;
+        MapMetrics.REHYDRATIONS.increment();
+        DexmapClient.getInstance().getTileRasterizer().submitCompact(this, compact);
+    }
+
+    /**
+     * Called by the raster worker once it has the tile's terrain, sampled or
+     * loaded. Returns false if the job's generation is no longer current,
+     * in which case the worker should drop it. Repeat calls are harmless.
+     */
+    public boolean markSampled(int expectedGeneration) {
+        return transition(expectedGeneration, TileState.QUEUED, TileState.SAMPLED)
+                || state == pack(expectedGeneration, TileState.SAMPLED);
+    }
+
+    /** Called by the raster worker just before it hands over the image; false means drop it. */
+    public boolean markRastered(int expectedGeneration) {
+        return transition(expectedGeneration, TileState.SAMPLED, TileState.RASTERED);
+    }
+
+    /**
+     * Called on the render thread with a finished image from a worker (or a
+     * rehydrated compact copy), the stamp of the style it was shaded with
+     * and the compact form of the same image.
+     */
+    public void acceptRaster(NativeImage image, int expectedGeneration, int style, CompactTile compact) {
+        TileAtlas atlas = DexmapClient.getInstance().getTileAtlas();
+        if (image.getWidth() != atlas.getTileSize()) {
+            // Rendered before a resolution change; the next draw rasters it again
+            image.close();
+            transition(expectedGeneration, TileState.RASTERED, TileState.EMPTY);
+            return;
         }
-        cachedTexture =
-                MinecraftStyleRenderer.createMinecraftStyleTexture(position, world);
-        MinecraftClient.getInstance()
-                .getTextureManager()
-                .registerTexture(textureId, cachedTexture);
-        textureReady = true;
+        if (!transition(expectedGeneration, TileState.RASTERED, TileState.UPLOADED)) {
+            // Invalidated or disposed while the worker was busy
+            image.close();
+            return;
+        }
+        boolean newlyResident = atlasSlot == TileAtlas.NO_SLOT;
+        if (newlyResident) {
+            atlasSlot = atlas.allocate();
+        }
+        atlas.upload(atlasSlot, image);
+        // Before onResident: its eviction may pick this tile, and must demote it with this copy
+        this.compact = compact;
+        this.styleStamp = style;
+        if (newlyResident && owner != null) {
+            owner.onResident(this);
+        }
+    }
+
+    /** Called on the render thread with a re-rendered part of the tile. */
+    public void acceptPartialRaster(
+            NativeImage image, int expectedGeneration, int style, int offX, int offY, CompactTile compact) {
+        if (style != styleStamp) {
+            // Restyled meantime; redo the whole tile
+            image.close();
+            transition(expectedGeneration, TileState.RASTERED, TileState.EMPTY);
+            return;
+        }
+        if (atlasSlot == TileAtlas.NO_SLOT
+                || !transition(expectedGeneration, TileState.RASTERED, TileState.UPLOADED)) {
+            // Invalidated or evicted meantime; the full raster that follows covers it
+            image.close();
+            return;
+        }
+        DexmapClient.getInstance().getTileAtlas().upload(atlasSlot, image, offX, offY);
+        this.compact = compact;
+    }
+
+    /**
+     * Records a changed block column. Returns true if it is the first one
+     * since the last flush, i.e. the tile now needs scheduling.
+     */
+    public boolean markColumnDirty(int localX, int localZ, long now) {
+        boolean first = !hasPendingColumns();
+        edits++;
+        ColumnMask.set(dirtyColumns, localX, localZ);
+        if (first) dirtySince = now;
+        return first;
+    }
+
+    /**
+     * Records that the neighbour across {@code edge} (a ColumnBuffer.EDGE_*
+     * bit) has new border heights, so that strip needs re-shading. Returns
+     * true like {@link #markColumnDirty}.
+     */
+    public boolean markSeamDirty(int edge, long now) {
+        boolean first = !hasPendingColumns();
+        ColumnMask.setEdge(seamColumns, edge);
+        if (first) dirtySince = now;
+        return first;
+    }
+
+    private boolean hasPendingColumns() {
+        return !ColumnMask.isEmpty(dirtyColumns) || !ColumnMask.isEmpty(seamColumns);
+    }
+
+    public int getSeamEdges() {
+        return seamEdges;
+    }
+
+    /** Called by the raster worker with the sides it shaded against neighbour heights. */
+    public void setSeamEdges(int edges, boolean replace) {
+        seamEdges = replace ? edges : seamEdges | edges;
+    }
+
+    /** Block changes applied to the chunk so far; a worker whose read spans a change reads again. */
+    public int getEdits() {
+        return edits;
+    }
+
+    public long getDirtySince() {
+        return dirtySince;
+    }
+
+    /**
+     * Re-renders the columns marked by {@link #markColumnDirty} and
+     * {@link #markSeamDirty}. Patches the
+     * current texture when there is one; otherwise the whole tile is rebuilt
+     * next time it is drawn. Returns false if a raster is still in flight,
+     * in which case the columns stay marked and the caller retries later.
+     */
+    public boolean flushDirtyColumns(ClientWorld world) {
+        if (!hasPendingColumns()) return true;
+        long w = state;
+        if (stateOf(w).isPending()) return false;
+
+        boolean textureReady = atlasSlot != TileAtlas.NO_SLOT;
+        if (ColumnMask.isEmpty(dirtyColumns) && !textureReady) {
+            // Only seams, and nothing drawn yet: the first raster reads the new borders anyway
+            ColumnMask.clear(seamColumns);
+            return true;
+        }
+        if (!textureReady || !persisted || world == null || ColumnMask.isFull(dirtyColumns)
+                || styleStamp != currentStyle() || stateOf(w) != TileState.UPLOADED) {
+            ColumnMask.clear(dirtyColumns);
+            ColumnMask.clear(seamColumns);
+            invalidateTexture();
+            return true;
+        }
+
+        long[] changed = dirtyColumns.clone();
+        long[] seams = seamColumns.clone();
+        ColumnMask.clear(dirtyColumns);
+        ColumnMask.clear(seamColumns);
+        if (!STATE.compareAndSet(this, w, with(w, TileState.QUEUED))
+                || !DexmapClient.getInstance().getTileRasterizer().submitPartial(this, world, changed, seams)) {
+            invalidateTexture();
+        }
+        return true;
+    }
+
+    public void rasterFailed(int expectedGeneration) {
+        // Don't spin on a chunk that keeps failing; the next invalidate retries it
+        if (!transition(expectedGeneration, TileState.QUEUED, TileState.FAILED)) {
+            transition(expectedGeneration, TileState.SAMPLED, TileState.FAILED);
+        }
+    }
+
+    /**
+     * The queued raster was dropped before it ran; the next draw requests
+     * it again. {@code lostChanges} means it carried block changes the
+     * stored copy lacks, so that copy can't be paged in as current.
+     */
+    public void rasterCancelled(int expectedGeneration, boolean lostChanges) {
+        if (!transition(expectedGeneration, TileState.QUEUED, TileState.EMPTY)) return;
+        if (lostChanges) persisted = false;
     }
 
     public void invalidateTexture() {
-        textureReady = false;
+        nextGeneration(TileState.EMPTY);
+        persisted = false;
+        dropCompact();
     }
 
+    /** Releases the texture and the compact copy. The next request re-rasters (or pages in, if persisted). */
     public void dispose() {
-        if (cachedTexture != null) {
-            cachedTexture.close();
-            cachedTexture = null;
+        dropCompact();
+        releaseTexture(TileState.EVICTED);
+    }
+
+    /**
+     * Releases the texture but keeps the compact copy for a quick
+     * re-upload. Returns false if there is none, in which case the tile
+     * was simply disposed.
+     */
+    boolean demote() {
+        releaseTexture(compact != null ? TileState.DEMOTED : TileState.EVICTED);
+        return compact != null;
+    }
+
+    /** Drops the compact copy; the next request re-rasters or pages in. */
+    void dropCompact() {
+        if (compact == null) return;
+        compact = null;
+        long w = state;
+        if (stateOf(w) == TileState.DEMOTED) STATE.compareAndSet(this, w, with(w, TileState.EVICTED));
+        if (owner != null) owner.onCompactDropped(this);
+    }
+
+    CompactTile getCompact() {
+        return compact;
+    }
+
+    private void releaseTexture(TileState next) {
+        nextGeneration(next);
+        if (atlasSlot != TileAtlas.NO_SLOT) {
+            DexmapClient.getInstance().getTileAtlas().free(atlasSlot);
+            atlasSlot = TileAtlas.NO_SLOT;
+            if (owner != null) owner.onReleased(this);
         }
-        textureReady = false;
+    }
+
+    private static long pack(int generation, TileState s) {
+        return ((long) generation << 32) | s.ordinal();
+    }
+
+    private static long with(long w, TileState s) {
+        return (w & 0xFFFFFFFF00000000L) | s.ordinal();
+    }
+
+    private static TileState stateOf(long w) {
+        return TileState.of((int) w);
+    }
+
+    private boolean transition(int expectedGeneration, TileState from, TileState to) {
+        return STATE.compareAndSet(this, pack(expectedGeneration, from), pack(expectedGeneration, to));
+    }
+
+    /**
+     * Starts a new generation in state {@code next}, whatever a worker is
+     * doing; its result no longer matches and is dropped when it arrives.
+     * Generations only change on the render thread, so the loop merely
+     * races workers' transitions within the old one.
+     */
+    private void nextGeneration(TileState next) {
+        long w;
+        do {
+            w = state;
+        } while (!STATE.compareAndSet(this, w, pack((int) (w >>> 32) + 1, next)));
+    }
+
+    public void markPersisted() {
+        persisted = true;
+    }
+
+    public boolean isPersisted() {
+        return persisted;
+    }
+
+    void setOwner(MapData owner) {
+        this.owner = owner;
+    }
+
+    void markReferenced() {
+        referenced = true;
+    }
+
+    /** Clears the reference bit and returns its previous value. */
+    boolean clearReferenced() {
+        boolean was = referenced;
+        referenced = false;
+        return was;
+    }
+
+    /** Whether a texture, possibly from an older generation, is resident. Render thread only. */
+    public boolean isTextureReady() {
+        return atlasSlot != TileAtlas.NO_SLOT;
+    }
+
+    public int getGeneration() {
+        return (int) (state >>> 32);
+    }
+
+    public TileState getState() {
+        return stateOf(state);
+    }
+
+    public int getStyleStamp() {
+        return styleStamp;
     }
 
     public ChunkPos getPosition() {
         return position;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package com.dexmap.data;
+
+/**
+ * {@link LongTileMap} whose writes are serialized on the map's monitor, for
+ * tables that several threads update. Reads stay lock-free.
+ */
+public class ConcurrentLongTileMap<V> extends LongTileMap<V> {
+    public ConcurrentLongTileMap() {
+        super();
+    }
+
+    public ConcurrentLongTileMap(int expectedSize) {
+        super(expectedSize);
+    }
+
+    @Override
+    public synchronized V put(long key, V value) {
+        return super.put(key, value);
+    }
+
+    @Override
+    public synchronized V putIfAbsent(long key, V value) {
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public synchronized V remove(long key) {
+        return super.remove(key);
+    }
+
+    @Override
+    public synchronized boolean remove(long key, V expected) {
+        return super.remove(key, expected);
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+    }
+}
@@ -0,0 +1,239 @@
+package com.dexmap.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Open-addressing hash map keyed by packed tile coordinates
+ * ({@link ChunkPos#toLong(int, int)}), so lookups never box a key or
+ * allocate a {@link ChunkPos}.
+ *
+ * Reads are lock-free and safe to run concurrently with one writer: a slot's
+ * value is published before its key, keys never move within a table, and
+ * removals leave a tombstone until the next rehash. Writes are not
+ * synchronized; use {@link ConcurrentLongTileMap} when several threads write.
+ */
+public class LongTileMap<V> {
+    /** Receives entries from iteration and range queries. */
+    @FunctionalInterface
+    public interface Visitor<V> {
+        void visit(int x, int z, V value);
+    }
+
+    // toLong(0, Integer.MIN_VALUE): far outside any world border
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final Object TOMBSTONE = new Object();
+    private static final int MIN_CAPACITY = 16;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table;
+    private volatile int size;
+    // Slots holding a key, live or tombstoned
+    private int used;
+
+    public LongTileMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongTileMap(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int entries) {
+        // Load factor <= 0.5 keeps probe chains short and guarantees empty slots
+        int cap = Integer.highestOneBit(Math.max(MIN_CAPACITY, entries * 2 - 1)) << 1;
+        return Math.max(MIN_CAPACITY, cap);
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public final V get(int x, int z) {
+        return get(ChunkPos.toLong(x, z));
+    }
+
+    @SuppressWarnings("unchecked")
+    public final V get(long key) {
+        Table t = table;
+        int i = slot(key, t.mask);
+        while (true) {
+            long k = (long) KEYS.getAcquire(t.keys, i);
+            if (k == key) {
+                Object v = VALUES.getAcquire(t.values, i);
+                return v == TOMBSTONE ? null : (V) v;
+            }
+            if (k == EMPTY) return null;
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    public final boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public final int size() {
+        return size;
+    }
+
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Associates a non-null value with the key; returns the previous value. */
+    public V put(long key, V value) {
+        return insert(key, value, false);
+    }
+
+    /** Inserts only if absent; returns the existing value, or null if inserted. */
+    public V putIfAbsent(long key, V value) {
+        return insert(key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V insert(long key, V value, boolean onlyIfAbsent) {
+        if (key == EMPTY) throw new IllegalArgumentException("Reserved key");
+        if (value == null) throw new NullPointerException("value");
+
+        Table t = table;
+        int i = slot(key, t.mask);
+        while (true) {
+            long k = t.keys[i];
+            if (k == key) {
+                Object old = t.values[i];
+                if (old == TOMBSTONE) {
+                    VALUES.setRelease(t.values, i, value);
+                    size++;
+                    return null;
+                }
+                if (!onlyIfAbsent) VALUES.setRelease(t.values, i, value);
+                return (V) old;
+            }
+            if (k == EMPTY) break;
+            i = (i + 1) & t.mask;
+        }
+
+        // New slot: value first, then the key that makes it visible to readers
+        VALUES.setRelease(t.values, i, value);
+        KEYS.setRelease(t.keys, i, key);
+        size++;
+        if (++used * 2 > t.keys.length) {
+            rehash(capacityFor(size));
+        }
+        return null;
+    }
+
+    public V remove(long key) {
+        return removeIf(key, null);
+    }
+
+    /** Removes the entry only if it currently maps to {@code expected}. */
+    public boolean remove(long key, V expected) {
+        return expected != null && removeIf(key, expected) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V removeIf(long key, V expected) {
+        Table t = table;
+        int i = slot(key, t.mask);
+        while (true) {
+            long k = t.keys[i];
+            if (k == key) {
+                Object old = t.values[i];
+                if (old == TOMBSTONE || (expected != null && old != expected)) return null;
+                VALUES.setRelease(t.values, i, TOMBSTONE);
+                size--;
+                return (V) old;
+            }
+            if (k == EMPTY) return null;
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    public void clear() {
+        table = new Table(MIN_CAPACITY);
+        size = 0;
+        used = 0;
+    }
+
+    // Builds a fresh table without tombstones and publishes it in one write.
+    private void rehash(int capacity) {
+        Table old = table;
+        Table t = new Table(capacity);
+        int live = 0;
+        for (int j = 0; j < old.keys.length; j++) {
+            Object v = old.values[j];
+            if (old.keys[j] == EMPTY || v == TOMBSTONE) continue;
+            int i = slot(old.keys[j], t.mask);
+            while (t.keys[i] != EMPTY) i = (i + 1) & t.mask;
+            t.keys[i] = old.keys[j];
+            t.values[i] = v;
+            live++;
+        }
+        used = live;
+        table = t;
+    }
+
+    /** Visits every live entry. Allocation-free. */
+    @SuppressWarnings("unchecked")
+    public final void forEach(Visitor<? super V> visitor) {
+        Table t = table;
+        for (int i = 0; i < t.keys.length; i++) {
+            long k = (long) KEYS.getAcquire(t.keys, i);
+            if (k == EMPTY) continue;
+            Object v = VALUES.getAcquire(t.values, i);
+            if (v == TOMBSTONE) continue;
+            visitor.visit(ChunkPos.getPackedX(k), ChunkPos.getPackedZ(k), (V) v);
+        }
+    }
+
+    /**
+     * Visits every live entry with minX <= x <= maxX and minZ <= z <= maxZ.
+     * Probes cell by cell when the rectangle is small relative to the table,
+     * otherwise scans the table. Allocation-free either way.
+     */
+    @SuppressWarnings("unchecked")
+    public final void forEachInRect(int minX, int minZ, int maxX, int maxZ, Visitor<? super V> visitor) {
+        if (maxX < minX || maxZ < minZ) return;
+        long area = (long) (maxX - minX + 1) * (maxZ - minZ + 1);
+        Table t = table;
+
+        if (area <= t.keys.length) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int x = minX; x <= maxX; x++) {
+                    V v = get(ChunkPos.toLong(x, z));
+                    if (v != null) visitor.visit(x, z, v);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < t.keys.length; i++) {
+            long k = (long) KEYS.getAcquire(t.keys, i);
+            if (k == EMPTY) continue;
+            int x = ChunkPos.getPackedX(k);
+            int z = ChunkPos.getPackedZ(k);
+            if (x < minX || x > maxX || z < minZ || z > maxZ) continue;
+            Object v = VALUES.getAcquire(t.values, i);
+            if (v != TOMBSTONE) visitor.visit(x, z, (V) v);
+        }
+    }
+}
@@ -1,63 +1,250 @@
 package com.dexmap.data;
 
+import com.dexmap.metrics.MapEvents;
+import com.dexmap.metrics.MapMetrics;
 import net.minecraft.util.math.ChunkPos;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
+/**
+ * Index of known chunk tiles plus a CLOCK cache over the ones that are
+ * resident in the atlas. Lookups only set a reference bit, so they are O(1)
+ * and lock-free; eviction runs when a tile becomes resident and the
+ * resident set is over its byte budget.
+ *
+ * Evicted tiles are demoted rather than forgotten: they keep their
+ * {@link com.dexmap.render.CompactTile} copy in a second, FIFO-ordered
+ * level with its own (heap) byte budget, and re-upload from it without a
+ * raster when drawn again.
+ *
+ * Residency changes and eviction happen on the render thread only.
+ */
 public class MapData {
-    private final Map<ChunkPos, ChunkData> chunks = new ConcurrentHashMap<>();
-    private final ConcurrentLinkedQueue<ChunkPos> accessOrder = new ConcurrentLinkedQueue<>();
-    private final int maxCachedChunks;
+    /**
+     * Called once a tile has no image left in memory: its texture was
+     * evicted without a compact copy, or the compact copy was dropped over
+     * budget. The entry is still indexed; the listener decides whether to
+     * drop it as well.
+     */
+    @FunctionalInterface
+    public interface EvictionListener {
+        void onEvicted(ChunkData chunk);
+    }
+
+    // Keyed by ChunkPos.toLong so per-frame lookups don't allocate
+    private final ConcurrentLongTileMap<ChunkData> chunks = new ConcurrentLongTileMap<>(1024);
+    private final long budgetBytes;
+    private int tileBytes;
+    private final EvictionListener listener;
+
+    // CLOCK ring of resident tiles; each tile knows its own index for O(1) removal
+    private ChunkData[] ring = new ChunkData[256];
+    private int ringSize;
+    private int hand;
+
+    private long residentBytes;
+    private long evictions;
+
+    // Demoted tiles, oldest first; entries whose stamp no longer matches are stale
+    private final ArrayDeque<Demoted> demoted = new ArrayDeque<>();
+    private final long compactBudgetBytes;
+    private long compactBytes;
+    private int compactCount;
+    private long demoteSeq;
 
     public MapData() {
-        this(1000); // Default cache size
+        this(64L << 20, 64 * 64 * 4, 32L << 20, chunk -> {});
     }
 
-    public MapData(int maxCachedChunks) {
-        this.maxCachedChunks = maxCachedChunks;
+    public MapData(long budgetBytes, int tileBytes, long compactBudgetBytes, EvictionListener listener) {
+        this.budgetBytes = budgetBytes;
+        this.tileBytes = tileBytes;
+        this.compactBudgetBytes = compactBudgetBytes;
+        this.listener = listener;
     }
 
     public void addChunk(ChunkData chunk) {
-        ChunkPos pos = chunk.getPosition();
-
-        // Add to cache
-        chunks.put(pos, chunk);
-        accessOrder.offer(pos);
-
-        // Remove oldest entries if cache is full
-        while (chunks.size() > maxCachedChunks) {
-            ChunkPos oldest = accessOrder.poll();
-            if (oldest != null) {
-                chunks.remove(oldest);
-            }
-        }
+        chunk.setOwner(this);
+        ChunkData old = chunks.put(chunk.getPosition().toLong(), chunk);
+        if (old != null && old != chunk) old.dispose();
     }
 
     public ChunkData getChunk(ChunkPos pos) {
-        ChunkData data = chunks.get(pos);
+        return getChunk(pos.x, pos.z);
+    }
+
+    public ChunkData getChunk(int chunkX, int chunkZ) {
+        ChunkData data = chunks.get(ChunkPos.toLong(chunkX, chunkZ));
         if (data != null) {
-            // Update access order
-            accessOrder.remove(pos);
-            accessOrder.offer(pos);
+            data.markReferenced();
         }
         return data;
     }
 
-    public Map<ChunkPos, ChunkData> getAllChunks() {
-        return chunks;
+    /** Lookup that doesn't count as a use for the cache. */
+    public ChunkData peekChunk(int chunkX, int chunkZ) {
+        return chunks.get(ChunkPos.toLong(chunkX, chunkZ));
+    }
+
+    /**
+     * Visits the indexed tiles inside an inclusive chunk rectangle.
+     * Allocation-free, so renderers can call it every frame; a tile counts
+     * as used once its atlas slot is requested.
+     */
+    public void forEachInRect(int minX, int minZ, int maxX, int maxZ, LongTileMap.Visitor<ChunkData> visitor) {
+        chunks.forEachInRect(minX, minZ, maxX, maxZ, visitor);
+    }
+
+    /** Removes a tile and releases its texture. Its stored copy stays on disk. */
+    public void removeChunk(ChunkPos pos) {
+        ChunkData data = chunks.remove(pos.toLong());
+        if (data != null) data.dispose();
+    }
+
+    /** Removes the entry only if it is still this tile; its texture is left alone. */
+    public boolean unindex(ChunkData chunk) {
+        return chunks.remove(chunk.getPosition().toLong(), chunk);
     }
 
     public boolean hasChunk(ChunkPos pos) {
-        return chunks.containsKey(pos);
+        return chunks.containsKey(pos.toLong());
     }
 
     public void clear() {
+        chunks.forEach((x, z, chunk) -> chunk.dispose());
         chunks.clear();
-        accessOrder.clear();
+        Arrays.fill(ring, 0, ringSize, null);
+        ringSize = 0;
+        hand = 0;
+        residentBytes = 0;
+        demoted.clear();
+        compactBytes = 0;
+        compactCount = 0;
+    }
+
+    /**
+     * Releases every tile's texture and compact copy but keeps the tiles
+     * indexed, so they re-render (from the tile store) when drawn again.
+     * Used when the tile resolution changes to {@code tileBytes} per tile.
+     * Render thread only.
+     */
+    public void releaseTextures(int tileBytes) {
+        chunks.forEach((x, z, chunk) -> chunk.dispose());
+        this.tileBytes = tileBytes;
     }
 
     public int getChunkCount() {
         return chunks.size();
     }
-}
\ No newline at end of file
+
+    public int getResidentCount() {
+        return ringSize;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /** Demoted tiles held only as a compact copy. */
+    public int getCompactCount() {
+        return compactCount;
+    }
+
+    public long getCompactBytes() {
+        return compactBytes;
+    }
+
+    // ---------- residency (render thread) ----------
+
+    void onResident(ChunkData chunk) {
+        undemote(chunk);
+        if (chunk.clockIndex >= 0) return;
+        if (ringSize == ring.length) ring = Arrays.copyOf(ring, ringSize * 2);
+        chunk.clockIndex = ringSize;
+        ring[ringSize++] = chunk;
+        residentBytes += tileBytes;
+
+        evictOverBudget();
+    }
+
+    void onReleased(ChunkData chunk) {
+        int i = chunk.clockIndex;
+        if (i < 0) return;
+        // Swap-remove; CLOCK tolerates the small reordering
+        ChunkData last = ring[--ringSize];
+        ring[i] = last;
+        last.clockIndex = i;
+        ring[ringSize] = null;
+        chunk.clockIndex = -1;
+        residentBytes -= tileBytes;
+        if (hand >= ringSize) hand = 0;
+    }
+
+    private void evictOverBudget() {
+        // Two sweeps at most: the first may only clear reference bits
+        int steps = ringSize * 2;
+        while (residentBytes > budgetBytes && ringSize > 1 && steps-- > 0) {
+            ChunkData c = ring[hand];
+            if (c.clearReferenced()) {
+                hand = (hand + 1) % ringSize;
+                continue;
+            }
+            MapEvents.Eviction event = new MapEvents.Eviction();
+            event.begin();
+            evictions++;
+            MapMetrics.EVICTIONS.increment();
+            // Both call onReleased
+            if (c.demote()) {
+                addDemoted(c);
+            } else {
+                listener.onEvicted(c);
+            }
+            if (event.shouldCommit()) {
+                event.chunkX = c.getPosition().x;
+                event.chunkZ = c.getPosition().z;
+                event.bytes = tileBytes;
+                event.residentBytes = residentBytes;
+                event.commit();
+            }
+        }
+    }
+
+    // ---------- demoted tiles (render thread) ----------
+
+    private void addDemoted(ChunkData chunk) {
+        chunk.demotedSeq = ++demoteSeq;
+        chunk.demotedBytes = chunk.getCompact().getBytes();
+        compactBytes += chunk.demotedBytes;
+        compactCount++;
+        demoted.add(new Demoted(chunk, chunk.demotedSeq));
+
+        while (compactBytes > compactBudgetBytes && !demoted.isEmpty()) {
+            Demoted d = demoted.poll();
+            if (d.chunk.demotedSeq != d.seq) continue;
+            d.chunk.dropCompact(); // calls onCompactDropped
+            listener.onEvicted(d.chunk);
+        }
+        // Rehydrated tiles leave stale entries behind; don't let them pile up
+        if (demoted.size() > compactCount * 2 + 64) {
+            demoted.removeIf(d -> d.chunk.demotedSeq != d.seq);
+        }
+    }
+
+    void onCompactDropped(ChunkData chunk) {
+        undemote(chunk);
+    }
+
+    private void undemote(ChunkData chunk) {
+        if (chunk.demotedSeq == 0) return;
+        compactBytes -= chunk.demotedBytes;
+        compactCount--;
+        chunk.demotedSeq = 0;
+        chunk.demotedBytes = 0;
+    }
+
+    private record Demoted(ChunkData chunk, long seq) {}
+}
@@ -0,0 +1,242 @@
+package com.dexmap.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One 32x32-chunk region on disk: an append-only data file of tile payloads
+ * plus a fixed-size offset index that is memory-mapped, so presence checks
+ * and lookups never touch the file system once the region is open.
+ *
+ * Index entry (16 bytes): long offset, int length, int version. Offset 0
+ * means "no tile"; the data file starts with a header so 0 is never valid.
+ *
+ * Crash safety: payloads are forced to disk before the index points at
+ * them, so a mapped index page reaching disk early never references data
+ * that isn't there. Compaction journals the new index in r.x.z.idx.new
+ * before touching the live files; a region opened with a journal present
+ * finishes the compaction first.
+ */
+public class RegionFile implements AutoCloseable {
+    public static final int REGION_SHIFT = 5;
+    public static final int REGION_SIZE = 1 << REGION_SHIFT;
+    private static final int ENTRIES = REGION_SIZE * REGION_SIZE;
+    private static final int ENTRY_BYTES = 16;
+    private static final int INDEX_BYTES = ENTRIES * ENTRY_BYTES;
+
+    private static final long DATA_MAGIC = 0x4445584D41505231L; // "DEXMAPR1"
+    private static final int DATA_HEADER = 8;
+
+    // Compact on close when at least this much of the data file is dead
+    private static final long COMPACT_MIN_WASTE = 1L << 20;
+
+    private final Path indexPath;
+    private final Path dataPath;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer index;
+    private FileChannel data;
+    private long dataEnd;
+    private long liveBytes;
+    private boolean closed;
+
+    private RegionFile(Path indexPath, Path dataPath) throws IOException {
+        this.indexPath = indexPath;
+        this.dataPath = dataPath;
+        this.indexChannel = FileChannel.open(indexPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_BYTES);
+        Path journal = sibling(indexPath, ".new");
+        if (Files.exists(journal)) {
+            // Interrupted after the compaction was committed
+            finishCompaction(journal);
+        } else {
+            // Interrupted before: the live files were never touched
+            Files.deleteIfExists(sibling(dataPath, ".tmp"));
+            Files.deleteIfExists(sibling(indexPath, ".tmp"));
+        }
+        this.data = FileChannel.open(dataPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (data.size() < DATA_HEADER) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER).putLong(0, DATA_MAGIC);
+            data.write(header, 0);
+        }
+        this.dataEnd = data.size();
+
+        for (int i = 0; i < ENTRIES; i++) {
+            if (index.getLong(i * ENTRY_BYTES) != 0) {
+                liveBytes += index.getInt(i * ENTRY_BYTES + 8);
+            }
+        }
+    }
+
+    /** Opens the region, or returns null if it doesn't exist and {@code create} is false. */
+    public static RegionFile open(Path dir, int regionX, int regionZ, boolean create) throws IOException {
+        Path idx = dir.resolve("r." + regionX + "." + regionZ + ".idx");
+        Path dat = dir.resolve("r." + regionX + "." + regionZ + ".dat");
+        if (!create && !(Files.exists(idx) && Files.exists(dat))) return null;
+        Files.createDirectories(dir);
+        return new RegionFile(idx, dat);
+    }
+
+    private static int slot(int chunkX, int chunkZ) {
+        return ((chunkZ & (REGION_SIZE - 1)) << REGION_SHIFT) | (chunkX & (REGION_SIZE - 1));
+    }
+
+    public synchronized boolean has(int chunkX, int chunkZ) {
+        return !closed && index.getLong(slot(chunkX, chunkZ) * ENTRY_BYTES) != 0;
+    }
+
+    /** Version of the stored tile, or 0 if absent. Bumped on every write. */
+    public synchronized int version(int chunkX, int chunkZ) {
+        if (closed) return 0;
+        int at = slot(chunkX, chunkZ) * ENTRY_BYTES;
+        return index.getLong(at) != 0 ? index.getInt(at + 12) : 0;
+    }
+
+    /** Reads a stored payload, or null if the chunk has never been written. */
+    public synchronized byte[] read(int chunkX, int chunkZ) throws IOException {
+        if (closed) return null;
+        int at = slot(chunkX, chunkZ) * ENTRY_BYTES;
+        long offset = index.getLong(at);
+        if (offset == 0) return null;
+        int length = index.getInt(at + 8);
+
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (data.read(buf, offset + buf.position()) < 0) {
+                throw new IOException("Truncated region data in " + dataPath.getFileName());
+            }
+        }
+        return buf.array();
+    }
+
+    public void write(int chunkX, int chunkZ, byte[] payload) throws IOException {
+        write(new int[] {chunkX}, new int[] {chunkZ}, new byte[][] {payload}, 1);
+    }
+
+    /**
+     * Appends a batch of payloads, forces them to disk with one sync, and
+     * only then points the index at them. Readers see the whole batch or
+     * none of it.
+     */
+    public synchronized void write(int[] chunkX, int[] chunkZ, byte[][] payloads, int count) throws IOException {
+        if (closed) throw new IOException("Region closed: " + dataPath.getFileName());
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buf = ByteBuffer.wrap(payloads[i]);
+            offsets[i] = dataEnd;
+            while (buf.hasRemaining()) {
+                data.write(buf, offsets[i] + buf.position());
+            }
+            dataEnd += payloads[i].length;
+        }
+        data.force(false);
+
+        for (int i = 0; i < count; i++) {
+            int at = slot(chunkX[i], chunkZ[i]) * ENTRY_BYTES;
+            if (index.getLong(at) != 0) liveBytes -= index.getInt(at + 8);
+            int version = index.getInt(at + 12) + 1;
+            index.putInt(at + 8, payloads[i].length);
+            index.putInt(at + 12, version);
+            index.putLong(at, offsets[i]);
+            liveBytes += payloads[i].length;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            long waste = dataEnd - DATA_HEADER - liveBytes;
+            if (waste >= COMPACT_MIN_WASTE && waste > liveBytes) {
+                compact();
+            }
+            index.force();
+        } finally {
+            data.close();
+            indexChannel.close();
+        }
+    }
+
+    /**
+     * Rewrites live payloads into a fresh data file. The live index and
+     * data file stay untouched until both the compacted data and its index
+     * are on disk and the index journal is committed by an atomic rename;
+     * from then on {@link #finishCompaction} can redo the rest after a
+     * crash. The mapped index is updated in place rather than replaced,
+     * since a mapped file can't be renamed over on every platform.
+     */
+    private void compact() throws IOException {
+        Path tmp = sibling(dataPath, ".tmp");
+        ByteBuffer newIndex = ByteBuffer.allocate(INDEX_BYTES);
+        newIndex.put(0, index, 0, INDEX_BYTES);
+        try (FileChannel out = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.allocate(DATA_HEADER).putLong(0, DATA_MAGIC), 0);
+            long pos = DATA_HEADER;
+            for (int i = 0; i < ENTRIES; i++) {
+                long offset = index.getLong(i * ENTRY_BYTES);
+                if (offset == 0) continue;
+                int length = index.getInt(i * ENTRY_BYTES + 8);
+                long copied = 0;
+                while (copied < length) {
+                    copied += data.transferTo(offset + copied, length - copied, out.position(pos + copied));
+                }
+                newIndex.putLong(i * ENTRY_BYTES, pos);
+                pos += length;
+            }
+            out.force(true);
+        }
+
+        Path journalTmp = sibling(indexPath, ".tmp");
+        Path journal = sibling(indexPath, ".new");
+        try (FileChannel out = FileChannel.open(journalTmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (newIndex.hasRemaining()) out.write(newIndex);
+            out.force(true);
+        }
+        // Commit point
+        Files.move(journalTmp, journal, StandardCopyOption.ATOMIC_MOVE);
+
+        data.close();
+        finishCompaction(journal);
+        data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Completes a committed compaction: copies the journaled index over the
+     * mapped one and forces it, moves the compacted data file into place if
+     * that hasn't happened yet, then drops the journal. Every step can be
+     * repeated, so a crash anywhere in here is finished by the next open.
+     * The data file must not be open.
+     */
+    private void finishCompaction(Path journal) throws IOException {
+        byte[] journaled = Files.readAllBytes(journal);
+        if (journaled.length != INDEX_BYTES) {
+            throw new IOException("Bad compaction journal " + journal.getFileName());
+        }
+        index.put(0, journaled);
+        index.force();
+        Path compacted = sibling(dataPath, ".tmp");
+        if (Files.exists(compacted)) {
+            Files.move(compacted, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.delete(journal);
+    }
+
+    private static Path sibling(Path file, String suffix) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+
+    public Path getIndexPath() {
+        return indexPath;
+    }
+}
@@ -0,0 +1,41 @@
+package com.dexmap.data;
+
+/**
+ * Lifecycle of a tile's current generation; see {@link ChunkData}. The
+ * texture of an older generation may stay on screen through any of these
+ * until the new one is uploaded.
+ */
+public enum TileState {
+    // Nothing built for this generation; the next draw queues a raster
+    EMPTY,
+    // Raster job queued or starting on a worker
+    QUEUED,
+    // Terrain in hand (sampled, or loaded from the tile store); being shaded
+    SAMPLED,
+    // Image finished, waiting for its upload on the render thread
+    RASTERED,
+    // Current texture resident in the atlas
+    UPLOADED,
+    // Texture released by the cache; the compact copy re-uploads it without a raster
+    DEMOTED,
+    // Texture and compact copy released; the next draw pages it back in
+    EVICTED,
+    // The raster failed; nothing is retried until the tile is invalidated
+    FAILED;
+
+    private static final TileState[] VALUES = values();
+
+    static TileState of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /** A job for this generation is on its way; another must not be queued. */
+    public boolean isPending() {
+        return this == QUEUED || this == SAMPLED || this == RASTERED;
+    }
+
+    /** Drawing the tile should queue a raster. */
+    public boolean needsRaster() {
+        return this == EMPTY || this == EVICTED;
+    }
+}
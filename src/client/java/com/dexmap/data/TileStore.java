@@ -0,0 +1,582 @@
+package com.dexmap.data;
+
+import com.dexmap.Dexmap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Per-world, per-dimension on-disk tile store. Tiles are grouped into
+ * {@link RegionFile}s of 32x32 tiles. Writes are coalesced per tile and
+ * flushed in batches on a single IO thread, so callers never block on disk.
+ *
+ * Level 0 holds chunk tiles; levels 1..{@link #MAX_LEVEL} hold the LOD
+ * pyramid, where a level-L tile covers 2^L x 2^L chunks. A separate layer
+ * keeps each chunk's sampled {@link com.dexmap.render.ColumnModel}, so
+ * tiles can be re-rendered in another style without the world.
+ *
+ * Chunk tiles carry the stamp of the {@link com.dexmap.render.MapStyle}
+ * they were shaded with; stamp 0 means unknown (LOD tiles, and tiles
+ * written before stamps existed).
+ */
+public class TileStore {
+    public static final int MAX_LEVEL = 4;
+
+    private static final long FLUSH_INTERVAL_MS = 2000;
+    private static final int MAX_OPEN_REGIONS = 32; // per level
+
+    // Layer index of the column models, after the pyramid levels
+    private static final int COLUMNS = MAX_LEVEL + 1;
+
+    // Payload format tags
+    private static final byte FORMAT_ABGR_DEFLATE = 1;
+    private static final byte FORMAT_ABGR_STYLED_DEFLATE = 2;
+    private static final byte FORMAT_RAW_DEFLATE = 3;
+
+    private final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Dexmap Tile IO");
+        t.setDaemon(true);
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+
+    private final Layer[] layers = new Layer[COLUMNS + 1];
+
+    private static final Pattern REGION_INDEX = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.idx");
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED); // IO thread only
+
+    // World new writes are tagged with and pending copies must match; switched at once by open and
+    // close, so nothing queued after a switch is taken for the previous world
+    private volatile Path directory;
+    // World the open regions belong to. Follows directory on the IO thread, once the previous
+    // world's writes are flushed.
+    private volatile Path regionDirectory;
+
+    public TileStore() {
+        for (int level = 0; level <= COLUMNS; level++) {
+            layers[level] = new Layer(level);
+        }
+        io.scheduleWithFixedDelay(this::flushSafely, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Directory for a world + dimension under the game directory. */
+    public static Path directoryFor(MinecraftClient client, ClientWorld world) {
+        String name;
+        if (client.getServer() != null) {
+            name = "sp_" + client.getServer().getSaveProperties().getLevelName();
+        } else if (client.getCurrentServerEntry() != null) {
+            name = "mp_" + client.getCurrentServerEntry().address;
+        } else {
+            name = "unknown";
+        }
+        Identifier dim = world.getRegistryKey().getValue();
+        return client.runDirectory.toPath()
+                .resolve("dexmap")
+                .resolve(sanitize(name))
+                .resolve(sanitize(dim.getNamespace() + "_" + dim.getPath()));
+    }
+
+    private static String sanitize(String s) {
+        return s.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Switch to another world/dimension. Writes queued from now on belong
+     * to it; pending writes for the old one are flushed first, and readers
+     * wait for that rather than see the old world's regions.
+     */
+    public void open(Path dir) {
+        directory = dir;
+        io.execute(() -> {
+            flushSafely();
+            closeRegions();
+            regionDirectory = dir;
+            Dexmap.LOGGER.info("Dexmap tile store: {}", dir);
+        });
+    }
+
+    /** Flush and close the current world. Does not stop the IO thread. */
+    public void close() {
+        directory = null;
+        io.execute(() -> {
+            flushSafely();
+            closeRegions();
+            regionDirectory = null;
+        });
+    }
+
+    /**
+     * Whether the open regions are the current world's, waiting for a
+     * switch still queued on the IO thread. Blocking; never call it from
+     * the IO thread.
+     */
+    private boolean awaitRegions() {
+        Path dir = directory;
+        if (dir == null) return false;
+        if (dir.equals(regionDirectory)) return true;
+        try {
+            // The IO thread runs tasks in order, so the switch is done once this no-op is
+            io.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | RejectedExecutionException e) {
+            return false;
+        }
+        return dir.equals(regionDirectory);
+    }
+
+    /** The pending write of a tile if it belongs to the current world. */
+    private PendingTile pending(Layer layer, int x, int z) {
+        PendingTile pending = layer.pendingWrites.get(ChunkPos.toLong(x, z));
+        return pending != null && pending.dir.equals(directory) ? pending : null;
+    }
+
+    /** Queue a chunk tile shaded with the given style stamp for writing. Never blocks. */
+    public void write(ChunkPos pos, int size, int style, int[] abgr) {
+        queue(0, pos.x, pos.z, new PendingTile(directory, size, style, abgr, null));
+    }
+
+    /**
+     * Queue a tile for writing. Never blocks. The array is kept until it is
+     * written, so callers must not modify it afterwards.
+     */
+    public void write(int level, int x, int z, int size, int[] abgr) {
+        queue(level, x, z, new PendingTile(directory, size, 0, abgr, null));
+    }
+
+    /** Queue a chunk's encoded column model for writing. Never blocks; the array is kept. */
+    public void writeColumns(ChunkPos pos, byte[] model) {
+        queue(COLUMNS, pos.x, pos.z, new PendingTile(directory, 0, 0, null, model));
+    }
+
+    private void queue(int level, int x, int z, PendingTile tile) {
+        if (tile.dir == null) return;
+        layers[level].pendingWrites.put(ChunkPos.toLong(x, z), tile);
+    }
+
+    public boolean hasTile(int chunkX, int chunkZ) {
+        return hasTile(0, chunkX, chunkZ);
+    }
+
+    /**
+     * True if the tile is stored. Never blocks: if the region's index hasn't
+     * been opened yet, it is opened in the background and this returns false
+     * until it is ready.
+     */
+    public boolean hasTile(int level, int x, int z) {
+        Layer layer = layers[level];
+        if (pending(layer, x, z) != null) return true;
+        // The regions still belong to the previous world; the switch takes an IO round trip
+        Path dir = directory;
+        if (dir == null || !dir.equals(regionDirectory)) return false;
+        long key = regionKey(x, z);
+        if (layer.missing.containsKey(key)) return false;
+
+        // Lock-free view of the open regions; a region closed meanwhile just reports false
+        RegionFile region = layer.openIndex.get(key);
+        if (region != null) return region.has(x, z);
+
+        if (layer.opening.putIfAbsent(key, Boolean.TRUE) == null) {
+            io.execute(() -> {
+                try {
+                    layer.region(x >> RegionFile.REGION_SHIFT, z >> RegionFile.REGION_SHIFT, false);
+                } finally {
+                    layer.opening.remove(key);
+                }
+            });
+        }
+        return false;
+    }
+
+    /** Reads a chunk tile shaded with the given style stamp, or with any style if it is 0. */
+    public int[] readTile(int chunkX, int chunkZ, int size, int style) {
+        return readTile(0, chunkX, chunkZ, size, style);
+    }
+
+    /**
+     * Reads and decodes a stored tile into a new array. Blocking; call from
+     * worker threads. Returns null if the tile is absent, unreadable, of
+     * another size, or (for a non-zero {@code style}) shaded differently.
+     */
+    public int[] readTile(int level, int x, int z, int size, int style) {
+        Layer layer = layers[level];
+        PendingTile pending = pending(layer, x, z);
+        if (pending != null) {
+            boolean match = pending.size == size && (style == 0 || pending.style == style);
+            return match ? pending.abgr.clone() : null;
+        }
+
+        byte[] payload = layer.read(x, z);
+        if (payload == null) return null;
+        try {
+            return decode(payload, size, style);
+        } catch (DataFormatException e) {
+            Dexmap.LOGGER.warn("Failed to read stored tile {} {}, {}: {}", level, x, z, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write version of a stored chunk tile, for cache validation: 0 if it
+     * isn't stored, -1 while a newer copy is still waiting to be written.
+     * Blocking; may open the region.
+     */
+    public int tileVersion(int chunkX, int chunkZ) {
+        Layer layer = layers[0];
+        if (pending(layer, chunkX, chunkZ) != null) return -1;
+        if (!awaitRegions()) return 0;
+        RegionFile region = layer.region(chunkX >> RegionFile.REGION_SHIFT, chunkZ >> RegionFile.REGION_SHIFT, false);
+        return region != null ? region.version(chunkX, chunkZ) : 0;
+    }
+
+    /** Reads a chunk's encoded column model. Blocking; returns null if absent or unreadable. */
+    public byte[] readColumns(int chunkX, int chunkZ) {
+        Layer layer = layers[COLUMNS];
+        PendingTile pending = pending(layer, chunkX, chunkZ);
+        if (pending != null) return pending.raw;
+
+        byte[] payload = layer.read(chunkX, chunkZ);
+        if (payload == null) return null;
+        try {
+            return decodeRaw(payload);
+        } catch (DataFormatException e) {
+            Dexmap.LOGGER.warn("Failed to read column model {}, {}: {}", chunkX, chunkZ, e.getMessage());
+            return null;
+        }
+    }
+
+    /** Directory of the open world, or null. Its files may lag a just-requested {@link #open} by an IO round trip. */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Regions holding chunk tiles, on disk or waiting to be written, as
+     * sorted {@link ChunkPos#toLong} keys of region coordinates. Blocking;
+     * lists the directory.
+     */
+    public long[] listRegions() throws IOException {
+        long[] keys = new long[64];
+        int n = 0;
+        Path root = directory;
+        if (root != null && Files.isDirectory(root)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "r.*.idx")) {
+                for (Path file : files) {
+                    Matcher m = REGION_INDEX.matcher(file.getFileName().toString());
+                    if (!m.matches()) continue;
+                    if (n == keys.length) keys = Arrays.copyOf(keys, n * 2);
+                    keys[n++] = ChunkPos.toLong(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)));
+                }
+            }
+        }
+        List<Long> pending = new ArrayList<>();
+        layers[0].pendingWrites.forEach((x, z, tile) -> {
+            if (tile.dir.equals(root)) pending.add(regionKey(x, z));
+        });
+        for (long key : pending) {
+            if (n == keys.length) keys = Arrays.copyOf(keys, n * 2);
+            keys[n++] = key;
+        }
+
+        Arrays.sort(keys, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || keys[unique - 1] != keys[i]) keys[unique++] = keys[i];
+        }
+        return Arrays.copyOf(keys, unique);
+    }
+
+    public int getPendingWriteCount() {
+        int n = 0;
+        for (Layer layer : layers) n += layer.pendingWrites.size();
+        return n;
+    }
+
+    public void shutdown() {
+        close();
+        io.shutdown();
+        try {
+            io.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---------- IO thread ----------
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Throwable t) {
+            Dexmap.LOGGER.error("Dexmap tile store flush failed: {}", t.getMessage());
+        }
+    }
+
+    private void flush() {
+        for (Layer layer : layers) {
+            layer.flush();
+        }
+    }
+
+    private void closeRegions() {
+        for (Layer layer : layers) {
+            layer.closeRegions();
+        }
+    }
+
+    private static void closeQuietly(RegionFile region) {
+        try {
+            region.close();
+        } catch (IOException e) {
+            Dexmap.LOGGER.warn("Failed to close region {}: {}", region.getIndexPath(), e.getMessage());
+        }
+    }
+
+    private static long regionKey(int x, int z) {
+        return ChunkPos.toLong(x >> RegionFile.REGION_SHIFT, z >> RegionFile.REGION_SHIFT);
+    }
+
+    /** Pending writes and open regions of one pyramid level. */
+    private final class Layer {
+        private final int level;
+        // Latest pixels per tile waiting to be written; a newer write replaces an older one
+        private final ConcurrentLongTileMap<PendingTile> pendingWrites = new ConcurrentLongTileMap<>();
+        // Regions whose index is being opened in the background
+        private final ConcurrentLongTileMap<Boolean> opening = new ConcurrentLongTileMap<>();
+        // Regions known not to exist on disk (and with nothing pending)
+        private final ConcurrentLongTileMap<Boolean> missing = new ConcurrentLongTileMap<>();
+        // Access-ordered so the least recently used region is closed first
+        private final LinkedHashMap<Long, RegionFile> regions = new LinkedHashMap<>(16, 0.75f, true);
+        // Mirror of regions for lock-free lookups from hasTile; written under the regions lock
+        private final ConcurrentLongTileMap<RegionFile> openIndex = new ConcurrentLongTileMap<>();
+
+        Layer(int level) {
+            this.level = level;
+        }
+
+        private Path dir(Path root) {
+            if (level == COLUMNS) return root.resolve("columns");
+            return level == 0 ? root : root.resolve("lod" + level);
+        }
+
+        byte[] read(int x, int z) {
+            if (!awaitRegions()) return null;
+            RegionFile region = region(x >> RegionFile.REGION_SHIFT, z >> RegionFile.REGION_SHIFT, false);
+            if (region == null) return null;
+            try {
+                return region.read(x, z);
+            } catch (IOException e) {
+                Dexmap.LOGGER.warn("Failed to read stored tile {} {}, {}: {}", level, x, z, e.getMessage());
+                return null;
+            }
+        }
+
+        void flush() {
+            if (pendingWrites.isEmpty()) return;
+
+            // Sort by region so each region is visited once per batch
+            List<Long> keys = new ArrayList<>(pendingWrites.size());
+            pendingWrites.forEach((x, z, tile) -> keys.add(ChunkPos.toLong(x, z)));
+            keys.sort((a, b) -> Long.compare(
+                    regionKey(ChunkPos.getPackedX(a), ChunkPos.getPackedZ(a)),
+                    regionKey(ChunkPos.getPackedX(b), ChunkPos.getPackedZ(b))));
+
+            int n = keys.size();
+            int[] xs = new int[n];
+            int[] zs = new int[n];
+            byte[][] payloads = new byte[n][];
+            PendingTile[] batch = new PendingTile[n];
+            long[] batchKeys = new long[n];
+            int count = 0;
+            long batchRegion = 0;
+            for (long key : keys) {
+                PendingTile tile = pendingWrites.get(key);
+                if (tile == null) continue;
+                int x = ChunkPos.getPackedX(key);
+                int z = ChunkPos.getPackedZ(key);
+                if (!tile.dir.equals(regionDirectory)) {
+                    // Queued for the world being switched to: written once its regions are open
+                    if (tile.dir.equals(directory)) continue;
+                    // A world left before this got written; its regions are closed
+                    pendingWrites.remove(key, tile);
+                    continue;
+                }
+                long region = regionKey(x, z);
+                if (count > 0 && region != batchRegion) {
+                    writeBatch(xs, zs, payloads, batch, batchKeys, count);
+                    count = 0;
+                }
+                batchRegion = region;
+                xs[count] = x;
+                zs[count] = z;
+                payloads[count] = encode(tile);
+                batch[count] = tile;
+                batchKeys[count] = key;
+                count++;
+            }
+            if (count > 0) writeBatch(xs, zs, payloads, batch, batchKeys, count);
+        }
+
+        // Writes tiles of one region with a single data sync
+        private void writeBatch(int[] xs, int[] zs, byte[][] payloads, PendingTile[] batch, long[] keys, int count) {
+            try {
+                RegionFile region = region(xs[0] >> RegionFile.REGION_SHIFT, zs[0] >> RegionFile.REGION_SHIFT, true);
+                if (region != null) region.write(xs, zs, payloads, count);
+            } catch (IOException e) {
+                Dexmap.LOGGER.warn("Failed to store {} tiles {} near {}, {}: {}",
+                        count, level, xs[0], zs[0], e.getMessage());
+            }
+            for (int i = 0; i < count; i++) {
+                // Only drop the entry if it wasn't replaced while we were writing
+                pendingWrites.remove(keys[i], batch[i]);
+                payloads[i] = null;
+                batch[i] = null;
+            }
+        }
+
+        RegionFile region(int regionX, int regionZ, boolean create) {
+            Path root = regionDirectory;
+            if (root == null) return null;
+            long key = ChunkPos.toLong(regionX, regionZ);
+            synchronized (regions) {
+                RegionFile region = regions.get(key);
+                if (region != null) return region;
+                if (!create && missing.containsKey(key)) return null;
+                try {
+                    region = RegionFile.open(dir(root), regionX, regionZ, create);
+                } catch (IOException e) {
+                    Dexmap.LOGGER.warn("Failed to open region {}, {}: {}", regionX, regionZ, e.getMessage());
+                    return null;
+                }
+                if (region == null) {
+                    missing.put(key, Boolean.TRUE);
+                    return null;
+                }
+                missing.remove(key);
+                regions.put(key, region);
+                openIndex.put(key, region);
+                trimRegions();
+                return region;
+            }
+        }
+
+        private void trimRegions() {
+            Iterator<Map.Entry<Long, RegionFile>> it = regions.entrySet().iterator();
+            while (regions.size() > MAX_OPEN_REGIONS && it.hasNext()) {
+                Map.Entry<Long, RegionFile> eldest = it.next();
+                it.remove();
+                openIndex.remove(eldest.getKey(), eldest.getValue());
+                closeQuietly(eldest.getValue());
+            }
+        }
+
+        void closeRegions() {
+            synchronized (regions) {
+                regions.values().forEach(TileStore::closeQuietly);
+                regions.clear();
+                openIndex.clear();
+            }
+            missing.clear();
+        }
+    }
+
+    // ---------- payload codec ----------
+
+    private byte[] encode(PendingTile tile) {
+        if (tile.raw != null) {
+            // [format][length:4][deflated bytes]
+            ByteBuffer header = ByteBuffer.allocate(5).put(FORMAT_RAW_DEFLATE).putInt(tile.raw.length);
+            return deflate(header.array(), tile.raw);
+        }
+        ByteBuffer raw = ByteBuffer.allocate(tile.abgr.length * 4);
+        raw.asIntBuffer().put(tile.abgr);
+        // [format][size:2][style:4][deflated ABGR]
+        ByteBuffer header = ByteBuffer.allocate(7)
+                .put(FORMAT_ABGR_STYLED_DEFLATE).putShort((short) tile.size).putInt(tile.style);
+        return deflate(header.array(), raw.array());
+    }
+
+    private byte[] deflate(byte[] header, byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buf = Arrays.copyOf(header, header.length + data.length / 2);
+        int len = header.length;
+        while (!deflater.finished()) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            len += deflater.deflate(buf, len, buf.length - len);
+        }
+        return Arrays.copyOf(buf, len);
+    }
+
+    private static int[] decode(byte[] payload, int size, int style) throws DataFormatException {
+        int offset;
+        int storedStyle;
+        if (payload.length >= 3 && payload[0] == FORMAT_ABGR_DEFLATE) {
+            offset = 3;
+            storedStyle = 0;
+        } else if (payload.length >= 7 && payload[0] == FORMAT_ABGR_STYLED_DEFLATE) {
+            offset = 7;
+            storedStyle = ByteBuffer.wrap(payload, 3, 4).getInt();
+        } else {
+            return null;
+        }
+        int storedSize = ((payload[1] & 0xFF) << 8) | (payload[2] & 0xFF);
+        if (storedSize != size || (style != 0 && storedStyle != style)) return null;
+
+        byte[] raw = inflate(payload, offset, size * size * 4);
+        int[] abgr = new int[size * size];
+        ByteBuffer.wrap(raw).asIntBuffer().get(abgr);
+        return abgr;
+    }
+
+    private static byte[] decodeRaw(byte[] payload) throws DataFormatException {
+        if (payload.length < 5 || payload[0] != FORMAT_RAW_DEFLATE) return null;
+        int length = ByteBuffer.wrap(payload, 1, 4).getInt();
+        if (length < 0 || length > 1 << 20) throw new DataFormatException("bad column model length");
+        return inflate(payload, 5, length);
+    }
+
+    private static byte[] inflate(byte[] payload, int offset, int length) throws DataFormatException {
+        byte[] raw = new byte[length];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(payload, offset, payload.length - offset);
+        int n = 0;
+        while (n < raw.length && !inflater.finished()) {
+            int got = inflater.inflate(raw, n, raw.length - n);
+            if (got == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+            n += got;
+        }
+        if (n != raw.length) throw new DataFormatException("short tile payload");
+        return raw;
+    }
+
+    // Either pixels (abgr) or an opaque blob (raw)
+    private record PendingTile(Path dir, int size, int style, int[] abgr, byte[] raw) {}
+}
@@ -0,0 +1,402 @@
+package com.dexmap.export;
+
+import com.dexmap.Dexmap;
+import com.dexmap.data.RegionFile;
+import com.dexmap.data.TileStore;
+import com.dexmap.render.ColumnBuffer;
+import com.dexmap.render.ColumnModel;
+import com.dexmap.render.LodPyramid;
+import com.dexmap.render.MapStyle;
+import com.dexmap.render.MinecraftStyleRenderer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Writes the explored map of the open world as z/x/y PNG tiles for a web
+ * map, plus a stitched overview.png and a tiles.json describing the grid.
+ *
+ * The stored regions are walked as a quadtree in Morton order. Each leaf
+ * reads one region of chunk tiles and writes the max-zoom tiles at one
+ * pixel per block; every inner node downsamples its four children as soon
+ * as they are done. A thread only ever holds the tiles along its current
+ * path, so memory stays flat however large the world is.
+ *
+ * The export is pinned to the world open when it starts: every read is
+ * bracketed by a check of the store's directory, and it stops as soon as
+ * the store moves to another world rather than mix the two.
+ *
+ * Zoom 0 is a single tile covering the whole explored area. Tile x/y
+ * count from the north-west corner of the region grid, given in blocks as
+ * originX/originZ in tiles.json.
+ */
+public final class MapExporter {
+    public static final int TILE = 256;
+    // A region is one tile at the zoom above the max
+    private static final int REGION_BLOCKS = RegionFile.REGION_SIZE * 16;
+    // Overview is the whole map at this zoom at most, 2048 px across
+    private static final int OVERVIEW_ZOOM = 3;
+    private static final long REPORT_INTERVAL_MS = 2000;
+
+    private final TileStore store;
+    private final MapStyle style;
+    private final Path out;
+    private final int threads;
+    private volatile boolean cancelled;
+    // Set with cancelled when the store leaves the world being exported
+    private volatile boolean worldChanged;
+    private volatile Thread thread;
+
+    // Progress, updated by the workers
+    private final AtomicInteger regionsDone = new AtomicInteger();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder tiles = new LongAdder();
+
+    // Fixed before the walk starts
+    private Path world;
+    private int regionCount;
+    private int minRegionX, minRegionZ;
+    // Zoom of the region tiles; the max zoom is one more
+    private int depth;
+    // Morton codes of the stored regions relative to the min corner, sorted
+    private long[] regionCodes;
+    private int overviewZoom;
+    private int[] overview;
+
+    public MapExporter(TileStore store, MapStyle style, Path out, int threads) {
+        this.store = store;
+        this.style = style;
+        this.out = out;
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Starts the export on its own thread. Progress lines and the final summary go to {@code report} from there. */
+    public void start(Consumer<String> report) {
+        Thread t = new Thread(() -> run(report), "Dexmap Export");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    /** Stops after the regions in progress; tiles written so far stay. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isRunning() {
+        Thread t = thread;
+        return t != null && t.isAlive();
+    }
+
+    public Path getOutput() {
+        return out;
+    }
+
+    private void run(Consumer<String> report) {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads, MapExporter::newWorker, null, false);
+        try {
+            world = store.getDirectory();
+            if (world == null) {
+                report.accept("Nothing to export yet");
+                return;
+            }
+            long[] regions = store.listRegions();
+            if (leftWorld()) {
+                report.accept("Export stopped: the world changed");
+                return;
+            }
+            if (regions.length == 0) {
+                report.accept("Nothing to export yet");
+                return;
+            }
+            plan(regions);
+            Files.createDirectories(out);
+            ForkJoinTask<int[]> root = pool.submit(new Node(0, 0, 0));
+            while (true) {
+                try {
+                    root.get(REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    report.accept(progress(start));
+                }
+            }
+            if (worldChanged) {
+                report.accept("Export stopped: the world changed after " + regionsDone.get() + " of "
+                        + regionCount + " regions");
+                return;
+            }
+            if (cancelled) {
+                report.accept("Export cancelled after " + regionsDone.get() + " of " + regionCount + " regions");
+                return;
+            }
+            writeImage(out.resolve("overview.png"), overview, TILE << overviewZoom);
+            writeMetadata();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            report.accept(String.format("Exported %d chunks as %d tiles in %.1f s (%.0f chunks/s) to %s",
+                    chunks.sum(), tiles.sum(), seconds, chunks.sum() / Math.max(seconds, 1e-3), out));
+        } catch (ExecutionException e) {
+            Dexmap.LOGGER.error("Map export failed", e.getCause());
+            report.accept("Export failed: " + e.getCause().getMessage());
+        } catch (IOException | InterruptedException e) {
+            Dexmap.LOGGER.error("Map export failed", e);
+            report.accept("Export failed: " + e.getMessage());
+        } finally {
+            pool.shutdownNow();
+            overview = null;
+        }
+    }
+
+    private static ForkJoinWorkerThread newWorker(ForkJoinPool pool) {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("Dexmap Export #" + t.getPoolIndex());
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    }
+
+    private String progress(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Runtime rt = Runtime.getRuntime();
+        return String.format("Exporting map: %d/%d regions, %d chunks (%.0f/s), %d tiles, heap %d MiB",
+                regionsDone.get(), regionCount, chunks.sum(), chunks.sum() / Math.max(seconds, 1e-3),
+                tiles.sum(), (rt.totalMemory() - rt.freeMemory()) >> 20);
+    }
+
+    /**
+     * True, and stops the export, once the store no longer serves the
+     * world this export started in. Checked before and after each read.
+     */
+    private boolean leftWorld() {
+        if (world.equals(store.getDirectory())) return false;
+        worldChanged = true;
+        cancelled = true;
+        return true;
+    }
+
+    /** Lays the quadtree over the stored regions. */
+    private void plan(long[] regions) {
+        int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (long key : regions) {
+            int x = ChunkPos.getPackedX(key);
+            int z = ChunkPos.getPackedZ(key);
+            minX = Math.min(minX, x);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxZ = Math.max(maxZ, z);
+        }
+        int extent = Math.max(maxX - minX, maxZ - minZ) + 1;
+        regionCount = regions.length;
+        minRegionX = minX;
+        minRegionZ = minZ;
+        depth = 32 - Integer.numberOfLeadingZeros(extent - 1);
+        regionCodes = new long[regions.length];
+        for (int i = 0; i < regions.length; i++) {
+            regionCodes[i] = morton(ChunkPos.getPackedX(regions[i]) - minX, ChunkPos.getPackedZ(regions[i]) - minZ);
+        }
+        Arrays.sort(regionCodes);
+        overviewZoom = Math.min(OVERVIEW_ZOOM, depth);
+        int side = TILE << overviewZoom;
+        overview = new int[side * side];
+    }
+
+    /** True if any stored region lies under tile (x, y) at {@code zoom}; a subtree is one range of Morton codes. */
+    private boolean hasRegions(int zoom, int x, int y) {
+        int shift = 2 * (depth - zoom);
+        long lo = morton(x, y) << shift;
+        long hi = (morton(x, y) + 1) << shift;
+        int i = Arrays.binarySearch(regionCodes, lo);
+        if (i < 0) i = -i - 1;
+        return i < regionCodes.length && regionCodes[i] < hi;
+    }
+
+    private static long morton(int x, int y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    private static long spread(int v) {
+        long x = v & 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    /** One map tile; computes its children, writes itself and returns its pixels (null if empty). */
+    private final class Node extends RecursiveTask<int[]> {
+        private final int zoom, x, y;
+
+        Node(int zoom, int x, int y) {
+            this.zoom = zoom;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (cancelled) return null;
+            int[] tile;
+            if (zoom == depth) {
+                tile = exportRegion(x, y);
+            } else {
+                List<Node> children = new ArrayList<>(4);
+                for (int q = 0; q < 4; q++) {
+                    int cx = x * 2 + (q & 1);
+                    int cy = y * 2 + (q >> 1);
+                    if (hasRegions(zoom + 1, cx, cy)) children.add(new Node(zoom + 1, cx, cy));
+                }
+                invokeAll(children);
+                tile = null;
+                for (Node child : children) {
+                    int[] pixels = child.join();
+                    if (pixels == null) continue;
+                    if (tile == null) tile = new int[TILE * TILE];
+                    LodPyramid.downsampleInto(pixels, tile, TILE, (child.x & 1) * TILE / 2, (child.y & 1) * TILE / 2);
+                }
+            }
+            if (tile == null) return null;
+            writeTile(zoom, x, y, tile);
+            if (zoom == overviewZoom) blitOverview(tile);
+            return tile;
+        }
+
+        private void blitOverview(int[] tile) {
+            int side = TILE << overviewZoom;
+            synchronized (overview) {
+                for (int row = 0; row < TILE; row++) {
+                    System.arraycopy(tile, row * TILE, overview, (y * TILE + row) * side + x * TILE, TILE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads one region's chunk tiles into its four max-zoom tiles, writes
+     * them, and returns their downsampled union.
+     */
+    private int[] exportRegion(int offX, int offZ) {
+        int size = style.size();
+        int[][] quads = new int[4][];
+        int baseX = (minRegionX + offX) << RegionFile.REGION_SHIFT;
+        int baseZ = (minRegionZ + offZ) << RegionFile.REGION_SHIFT;
+        for (int cz = 0; cz < RegionFile.REGION_SIZE; cz++) {
+            for (int cx = 0; cx < RegionFile.REGION_SIZE; cx++) {
+                if (cancelled || leftWorld()) return null;
+                int[] pixels = chunkPixels(store, style, baseX + cx, baseZ + cz);
+                // Possibly read from the next world
+                if (leftWorld()) return null;
+                if (pixels == null) continue;
+                int half = RegionFile.REGION_SIZE / 2;
+                int q = cx / half + (cz / half) * 2;
+                if (quads[q] == null) quads[q] = new int[TILE * TILE];
+                reduceToBlocks(pixels, size, quads[q], (cx % half) * 16, (cz % half) * 16);
+                chunks.increment();
+            }
+        }
+
+        int[] tile = null;
+        for (int q = 0; q < 4; q++) {
+            if (quads[q] == null) continue;
+            writeTile(depth + 1, offX * 2 + (q & 1), offZ * 2 + (q >> 1), quads[q]);
+            if (tile == null) tile = new int[TILE * TILE];
+            LodPyramid.downsampleInto(quads[q], tile, TILE, (q & 1) * TILE / 2, (q >> 1) * TILE / 2);
+        }
+        regionsDone.incrementAndGet();
+        return tile;
+    }
+
+    /**
+     * A stored chunk tile at the style's resolution, re-shaded from its
+     * column model if it was stored at another one; null if unexplored.
+     * Blocking.
+     */
+    static int[] chunkPixels(TileStore store, MapStyle style, int chunkX, int chunkZ) {
+        int[] pixels = store.readTile(chunkX, chunkZ, style.size(), 0);
+        if (pixels != null) return pixels;
+        byte[] model = store.readColumns(chunkX, chunkZ);
+        if (model == null) return null;
+        ColumnBuffer columns = ColumnBuffer.get();
+        if (!ColumnModel.decode(model, columns)) return null;
+        pixels = new int[style.size() * style.size()];
+        MinecraftStyleRenderer.shadeChunk(new ChunkPos(chunkX, chunkZ), columns, style, pixels);
+        return pixels;
+    }
+
+    /** Box-filters a chunk tile to one pixel per block, into a 16x16 square of {@code dst} at (dx, dz). */
+    private static void reduceToBlocks(int[] src, int size, int[] dst, int dx, int dz) {
+        int px = size / 16;
+        int n = px * px;
+        for (int bz = 0; bz < 16; bz++) {
+            for (int bx = 0; bx < 16; bx++) {
+                int a = 0, b = 0, g = 0, r = 0;
+                for (int z = 0; z < px; z++) {
+                    int row = (bz * px + z) * size + bx * px;
+                    for (int x = 0; x < px; x++) {
+                        int c = src[row + x];
+                        a += c >>> 24;
+                        b += (c >> 16) & 0xFF;
+                        g += (c >> 8) & 0xFF;
+                        r += c & 0xFF;
+                    }
+                }
+                dst[(dz + bz) * TILE + dx + bx] = (a / n) << 24 | (b / n) << 16 | (g / n) << 8 | (r / n);
+            }
+        }
+    }
+
+    private void writeTile(int zoom, int x, int y, int[] abgr) {
+        Path file = out.resolve(Integer.toString(zoom)).resolve(Integer.toString(x)).resolve(y + ".png");
+        try {
+            Files.createDirectories(file.getParent());
+            writeImage(file, abgr, TILE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + file, e);
+        }
+        tiles.increment();
+    }
+
+    static void writeImage(Path file, int[] abgr, int side) throws IOException {
+        try (NativeImage img = new NativeImage(side, side, false)) {
+            for (int z = 0; z < side; z++) {
+                for (int x = 0; x < side; x++) {
+                    img.setColor(x, z, abgr[z * side + x]);
+                }
+            }
+            img.writeTo(file);
+        }
+    }
+
+    private void writeMetadata() throws IOException {
+        String json = "{\n"
+                + "  \"tileSize\": " + TILE + ",\n"
+                + "  \"minZoom\": 0,\n"
+                + "  \"maxZoom\": " + (depth + 1) + ",\n"
+                + "  \"blocksPerPixelAtMaxZoom\": 1,\n"
+                + "  \"originX\": " + (long) minRegionX * REGION_BLOCKS + ",\n"
+                + "  \"originZ\": " + (long) minRegionZ * REGION_BLOCKS + ",\n"
+                + "  \"overviewZoom\": " + overviewZoom + ",\n"
+                + "  \"regions\": " + regionCount + ",\n"
+                + "  \"chunks\": " + chunks.sum() + "\n"
+                + "}\n";
+        Files.writeString(out.resolve("tiles.json"), json, StandardCharsets.UTF_8);
+    }
+}
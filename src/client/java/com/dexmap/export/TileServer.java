@@ -0,0 +1,239 @@
+package com.dexmap.export;
+
+import com.dexmap.Dexmap;
+import com.dexmap.DexmapClient;
+import com.dexmap.data.ConcurrentLongTileMap;
+import com.dexmap.data.TileStore;
+import com.dexmap.render.MapStyle;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ClientPlayerEntity;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Optional HTTP server on localhost that shows the explored map in a
+ * browser: a viewer page, the player position, and chunk tiles as PNGs at
+ * /tile/x/z.png, read from the tile store the in-game map pages in from.
+ *
+ * A tile is encoded once per stored version into a PNG cache next to the
+ * store and revalidated by ETag, so an unchanged tile costs a 304 and an
+ * index lookup. Versions count per store, so the ETag also names the store
+ * directory; after a world switch the browser never revalidates a tile of
+ * the previous world. Requests run on a small pool of low-priority threads; past
+ * its queue the accepting thread serves them itself, which throttles the
+ * browser instead of ever reaching the game.
+ */
+public final class TileServer {
+    private static final Pattern TILE_PATH = Pattern.compile("/tile/(-?\\d+)/(-?\\d+)\\.png");
+    private static final int QUEUE = 64;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final byte[] index;
+    // ETag of each tile's PNG in the cache of the store directory cachedFor
+    private final ConcurrentLongTileMap<String> cached = new ConcurrentLongTileMap<>();
+    private Path cachedFor;
+
+    public TileServer(int port, int threads) throws IOException {
+        try (InputStream in = TileServer.class.getResourceAsStream("/assets/dexmap/web/index.html")) {
+            if (in == null) throw new IOException("Missing map viewer page");
+            index = in.readAllBytes();
+        }
+        int n = Math.max(1, threads);
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(n, n, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE), r -> {
+            Thread t = new Thread(r, "Dexmap HTTP #" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handleIndex);
+        server.createContext("/player", this::handlePlayer);
+        server.createContext("/tile/", this::handleTile);
+    }
+
+    public void start() {
+        server.start();
+        Dexmap.LOGGER.info("Dexmap tile server at http://{}:{}/",
+                server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleIndex(HttpExchange ex) throws IOException {
+        try {
+            if (!"/".equals(ex.getRequestURI().getPath())) {
+                send(ex, 404, "text/plain", "Not found");
+            } else {
+                send(ex, 200, "text/html; charset=utf-8", index);
+            }
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void handlePlayer(HttpExchange ex) throws IOException {
+        try {
+            ClientPlayerEntity player = MinecraftClient.getInstance().player;
+            String json = player == null
+                    ? "{\"online\":false}"
+                    : String.format(Locale.ROOT, "{\"online\":true,\"x\":%.2f,\"z\":%.2f,\"tileSize\":%d}",
+                            player.getX(), player.getZ(), DexmapClient.getInstance().getTileRasterizer().getStyle().size());
+            ex.getResponseHeaders().set("Cache-Control", "no-store");
+            send(ex, 200, "application/json", json);
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void handleTile(HttpExchange ex) throws IOException {
+        try {
+            Matcher m = TILE_PATH.matcher(ex.getRequestURI().getPath());
+            if (!"GET".equals(ex.getRequestMethod()) || !m.matches()) {
+                send(ex, 404, "text/plain", "Not found");
+                return;
+            }
+            int x = Integer.parseInt(m.group(1));
+            int z = Integer.parseInt(m.group(2));
+            DexmapClient dexmap = DexmapClient.getInstance();
+            TileStore store = dexmap.getTileStore();
+            Path dir = store.getDirectory();
+            int version = dir != null ? store.tileVersion(x, z) : 0;
+            // The store switched worlds while the version was read
+            if (dir != null && !dir.equals(store.getDirectory())) version = 0;
+            if (version == 0) {
+                send(ex, 404, "text/plain", "Not explored");
+                return;
+            }
+
+            // A tile still waiting to be written has no version yet; it is sent once and not cached
+            MapStyle style = dexmap.getTileRasterizer().getStyle();
+            String etag = version > 0
+                    ? "\"" + Integer.toHexString(dir.hashCode()) + "-" + version + "-" + style.size() + "-"
+                            + Integer.toHexString(style.stamp()) + "\""
+                    : null;
+            if (etag != null && etag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                ex.getResponseHeaders().set("ETag", etag);
+                ex.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            Path file = cachedPng(store, style, dir, x, z, etag);
+            if (file == null) {
+                send(ex, 404, "text/plain", "Not explored");
+                return;
+            }
+            ex.getResponseHeaders().set("Content-Type", "image/png");
+            if (etag != null) {
+                ex.getResponseHeaders().set("ETag", etag);
+                ex.getResponseHeaders().set("Cache-Control", "no-cache");
+            } else {
+                ex.getResponseHeaders().set("Cache-Control", "no-store");
+            }
+            try {
+                sendFile(ex, file);
+            } finally {
+                if (etag == null) Files.deleteIfExists(file);
+            }
+        } catch (RuntimeException e) {
+            Dexmap.LOGGER.warn("Tile request {} failed: {}", ex.getRequestURI(), e.getMessage());
+        } finally {
+            ex.close();
+        }
+    }
+
+    /**
+     * The tile's PNG, encoded into the cache unless it is there for
+     * {@code etag} already. With a null etag it goes to a temporary file
+     * the caller deletes. Returns null if the tile can't be read.
+     */
+    private Path cachedPng(TileStore store, MapStyle style, Path dir, int x, int z, String etag) throws IOException {
+        synchronized (cached) {
+            if (!dir.equals(cachedFor)) {
+                cached.clear();
+                cachedFor = dir;
+            }
+        }
+        Path cacheDir = dir.resolve("web");
+        Path file = cacheDir.resolve(x + "." + z + ".png");
+        long key = ChunkPos.toLong(x, z);
+        if (etag != null && etag.equals(cached.get(key)) && Files.exists(file)) return file;
+
+        int[] pixels = MapExporter.chunkPixels(store, style, x, z);
+        // Null too if the pixels may come from the world switched to since
+        if (pixels == null || !dir.equals(store.getDirectory())) return null;
+        Files.createDirectories(cacheDir);
+        Path tmp = Files.createTempFile(cacheDir, "tile", ".png");
+        try {
+            MapExporter.writeImage(tmp, pixels, style.size());
+            if (etag == null) return tmp;
+            // Readers of the old file keep their handle; new ones see the whole new one
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        cached.put(key, etag);
+        return file;
+    }
+
+    /**
+     * Copies a file into the response body. HttpServer exposes an
+     * OutputStream rather than the socket, so this is a buffered copy: the
+     * stream's channel adapter moves it through a small heap buffer, never
+     * the whole tile at once.
+     */
+    private static void sendFile(HttpExchange ex, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ex.sendResponseHeaders(200, size);
+            try (OutputStream os = ex.getResponseBody()) {
+                WritableByteChannel body = Channels.newChannel(os);
+                long sent = 0;
+                while (sent < size) {
+                    sent += channel.transferTo(sent, size - sent, body);
+                }
+            }
+        }
+    }
+
+    private static void send(HttpExchange ex, int status, String type, String body) throws IOException {
+        send(ex, status, type, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange ex, int status, String type, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", type);
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
@@ -2,18 +2,19 @@ package com.dexmap.gui;
 
 import com.dexmap.DexmapClient;
 import com.dexmap.data.ChunkData;
+import com.dexmap.metrics.MapMetrics;
+import com.dexmap.render.LodPyramid;
+import com.dexmap.render.TileAtlas;
+import com.dexmap.render.TileBatch;
+import com.dexmap.render.TileRasterizer;
 import com.dexmap.world.ChunkScanner;
 import com.mojang.blaze3d.systems.RenderSystem;
-import java.util.Objects;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.world.ClientWorld;
 import net.minecraft.text.Text;
-import net.minecraft.util.Identifier;
-import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MathHelper;
 import org.lwjgl.glfw.GLFW;
-import org.lwjgl.opengl.GL11;
 
 public class WorldMapScreen extends Screen {
     // Visual
@@ -23,8 +24,9 @@ public class WorldMapScreen extends Screen {
     private boolean showCoordinates = true;
     private boolean showGrid = false;
 
-    // Cache to avoid redundant filter calls
-    private Identifier lastBoundForFilter = null;
+    // Visible tiles for this frame, drawn grouped by atlas page
+    private TileBatch batch;
+    private TileBatch lodBatch;
 
     public WorldMapScreen() {
         super(Text.literal("World Map"));
@@ -41,7 +43,8 @@ public class WorldMapScreen extends Screen {
         final var cfg = DexmapClient.getInstance().getConfig();
         final ChunkScanner scanner = DexmapClient.getInstance().getChunkScanner();
         final ClientWorld world = client.world;
-        final ChunkPos playerChunk = new ChunkPos(client.player.getBlockPos());
+        final int playerChunkX = client.player.getBlockX() >> 4;
+        final int playerChunkZ = client.player.getBlockZ() >> 4;
 
         // Center of the screen in GUI coords
         final int centerX = width / 2;
@@ -53,35 +56,56 @@ public class WorldMapScreen extends Screen {
         // Chunk size in screen pixels at current zoom
         final float chunkPx = 16f * mapScale;
 
+        // Uploads are drained by the HUD pass each frame; steer them and the raster queue towards what is on screen
+        final TileRasterizer rasterizer = DexmapClient.getInstance().getTileRasterizer();
+        final float viewX = playerChunkX - mapOffsetX / chunkPx;
+        final float viewZ = playerChunkZ - mapOffsetZ / chunkPx;
+        rasterizer.setUploadFocus(viewX, viewZ);
+        rasterizer.setViewFocus(viewX, viewZ);
+
         // Compute how many chunks we need around the center
         final int viewRadius = (int) Math.ceil(
                 Math.max(width, height) / chunkPx
         ) + 2;
 
         // Draw visible chunks
+        final long drawStart = System.nanoTime();
         RenderSystem.enableBlend();
         RenderSystem.defaultBlendFunc();
 
-        // Loop only the chunks that can appear on screen
-        for (int dx = -viewRadius; dx <= viewRadius; dx++) {
-            for (int dz = -viewRadius; dz <= viewRadius; dz++) {
-                final int drawX = (int) (centerX + (dx * chunkPx) + mapOffsetX);
-                final int drawY = (int) (centerY + (dz * chunkPx) + mapOffsetZ);
-
-                // Cull offscreen chunks early
-                if (
-                        drawX > width || drawY > height || drawX + chunkPx < 0 || drawY + chunkPx < 0
-                ) {
-                    continue;
+        final TileAtlas lodAtlas = DexmapClient.getInstance().getLodAtlas();
+        final LodPyramid lod = DexmapClient.getInstance().getLodPyramid();
+        lod.beginFrame();
+
+        // Zoomed out: draw the pyramid level whose texel density matches the zoom,
+        // so the number of tiles touched stays fixed regardless of explored area
+        final int level = LodPyramid.levelFor(chunkPx, lodAtlas.getTileSize());
+
+        // Visible chunk range
+        final int minCx = playerChunkX + MathHelper.floor((-centerX - mapOffsetX) / chunkPx);
+        final int maxCx = playerChunkX + MathHelper.floor((width - centerX - mapOffsetX) / chunkPx);
+        final int minCz = playerChunkZ + MathHelper.floor((-centerY - mapOffsetZ) / chunkPx);
+        final int maxCz = playerChunkZ + MathHelper.floor((height - centerY - mapOffsetZ) / chunkPx);
+
+        if (level > 0) {
+            drawLodTiles(lodAtlas, lod, level, minCx, minCz, maxCx, maxCz,
+                    playerChunkX, playerChunkZ, centerX, centerY, chunkPx);
+            getLodBatch().draw(ctx);
+        } else {
+            // Walk only the on-screen rectangle; lookups are by packed key, no ChunkPos per cell
+            for (int cz = minCz; cz <= maxCz; cz++) {
+                for (int cx = minCx; cx <= maxCx; cx++) {
+                    final ChunkData cdata = scanner.getOrLoadChunkData(cx, cz);
+                    if (cdata == null) continue;
+
+                    final int drawX = (int) (centerX + ((cx - playerChunkX) * chunkPx) + mapOffsetX);
+                    final int drawY = (int) (centerY + ((cz - playerChunkZ) * chunkPx) + mapOffsetZ);
+                    drawChunkTexture(ctx, world, cdata, drawX, drawY, (int) chunkPx);
                 }
-
-                final ChunkPos cpos = new ChunkPos(playerChunk.x + dx, playerChunk.z + dz);
-                final ChunkData cdata = scanner.getChunkData(cpos);
-                if (cdata == null) continue;
-
-                drawChunkTexture(ctx, world, cdata, drawX, drawY, (int) chunkPx);
             }
+            getBatch().draw(ctx);
         }
+        MapMetrics.DRAW.recordSince(drawStart);
 
         // Grid
         if (showGrid && mapScale >= 1.0f) {
@@ -106,35 +130,58 @@ public class WorldMapScreen extends Screen {
             int y,
             int sizeOnScreen
     ) {
-        final var cfg = DexmapClient.getInstance().getConfig();
+        // Queue the tile if needed; placeholder until it is in the atlas
+        int slot = chunk.getAtlasSlot(world);
+        if (slot == TileAtlas.NO_SLOT) {
+            ctx.fill(x, y, x + sizeOnScreen, y + sizeOnScreen, TileRasterizer.PLACEHOLDER_COLOR);
+            return;
+        }
+
+        // Atlas pages are nearest-filtered, so tiles stay sharp when zoomed in
+        getBatch().add(slot, x, y, x + sizeOnScreen, y + sizeOnScreen);
+    }
+
+    private void drawLodTiles(
+            TileAtlas atlas,
+            LodPyramid lod,
+            int level,
+            int minCx,
+            int minCz,
+            int maxCx,
+            int maxCz,
+            int playerChunkX,
+            int playerChunkZ,
+            int centerX,
+            int centerY,
+            float chunkPx
+    ) {
+        final float tilePx = chunkPx * (1 << level);
 
-        // Get or build the texture
-        Identifier tex = chunk.getTextureId(world);
+        // The level-L tiles covering the visible chunk range
+        for (int tx = minCx >> level; tx <= maxCx >> level; tx++) {
+            for (int tz = minCz >> level; tz <= maxCz >> level; tz++) {
+                final int slot = lod.getAtlasSlot(atlas, level, tx, tz);
+                if (slot == TileAtlas.NO_SLOT) continue;
 
-        // Bind and force nearest-neighbor filtering to avoid blur
-        // Also pass the true texture size so UVs are exact (prevents sampling blur)
-        bindTextureWithNearest(tex);
+                final float x = centerX + ((tx << level) - playerChunkX) * chunkPx + mapOffsetX;
+                final float y = centerY + ((tz << level) - playerChunkZ) * chunkPx + mapOffsetZ;
+                getLodBatch().add(slot, x, y, x + tilePx, y + tilePx);
+            }
+        }
+    }
 
-        final int texSize = Math.max(16, cfg.textureResolution);
-        ctx.drawTexture(tex, x, y, 0, 0, sizeOnScreen, sizeOnScreen, texSize, texSize);
+    private TileBatch getBatch() {
+        if (batch == null) {
+            batch = new TileBatch(DexmapClient.getInstance().getTileAtlas());
+        }
+        return batch;
     }
 
-    private void bindTextureWithNearest(Identifier id) {
-        // Avoid redundant texParameter calls if same texture bound consecutively
-        if (!Objects.equals(lastBoundForFilter, id)) {
-            RenderSystem.setShaderTexture(0, id);
-            GL11.glTexParameteri(
-                    GL11.GL_TEXTURE_2D,
-                    GL11.GL_TEXTURE_MIN_FILTER,
-                    GL11.GL_NEAREST
-            );
-            GL11.glTexParameteri(
-                    GL11.GL_TEXTURE_2D,
-                    GL11.GL_TEXTURE_MAG_FILTER,
-                    GL11.GL_NEAREST
-            );
-            lastBoundForFilter = id;
+    private TileBatch getLodBatch() {
+        if (lodBatch == null) {
+            lodBatch = new TileBatch(DexmapClient.getInstance().getLodAtlas());
         }
+        return lodBatch;
     }
 
     private void drawGrid(
@@ -199,6 +246,11 @@ public class WorldMapScreen extends Screen {
         int chunks = DexmapClient.getInstance().getChunkScanner().getMapData().getChunkCount();
         ctx.drawTextWithShadow(tr, "Chunks: " + chunks, 10, 40, 0xFFFFFFFF);
 
+        int backlog = DexmapClient.getInstance().getTileRasterizer().getUploadBacklog();
+        if (backlog > 0) {
+            ctx.drawTextWithShadow(tr, "Uploads queued: " + backlog, 10, 55, 0xFFCCCCCC);
+        }
+
         int ly = height - 48;
         ctx.drawTextWithShadow(tr, "Mouse wheel: Zoom", 10, ly, 0xFFCCCCCC);
         ctx.drawTextWithShadow(tr, "Drag: Pan", 10, ly + 12, 0xFFCCCCCC);
@@ -268,6 +320,12 @@ public class WorldMapScreen extends Screen {
         mapOffsetZ = 0f;
     }
 
+    @Override
+    public void removed() {
+        DexmapClient.getInstance().getTileRasterizer().clearViewFocus();
+        super.removed();
+    }
+
     @Override
     public boolean shouldPause() {
         return false;
@@ -0,0 +1,63 @@
+package com.dexmap.input;
+
+import com.dexmap.DexmapClient;
+import com.dexmap.export.MapExporter;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.text.Text;
+
+/** Client-side /dexmap commands. */
+public class DexmapCommands {
+    // The export in progress or last finished; one at a time
+    private static MapExporter export;
+
+    public static void register() {
+        ClientCommandRegistrationCallback.EVENT.register((dispatcher, registryAccess) -> dispatcher.register(
+                ClientCommandManager.literal("dexmap")
+                        .then(ClientCommandManager.literal("export")
+                                .executes(ctx -> startExport(ctx.getSource()))
+                                .then(ClientCommandManager.literal("cancel")
+                                        .executes(ctx -> cancelExport(ctx.getSource()))))));
+    }
+
+    /** Exports the current world and dimension to <game dir>/dexmap/export/<world>/<dimension>/<time>. */
+    private static int startExport(FabricClientCommandSource source) {
+        if (export != null && export.isRunning()) {
+            source.sendError(Text.literal("A map export is already running; /dexmap export cancel stops it"));
+            return 0;
+        }
+        DexmapClient dexmap = DexmapClient.getInstance();
+        Path storeDir = dexmap.getTileStore().getDirectory();
+        if (storeDir == null) {
+            source.sendError(Text.literal("No map is open"));
+            return 0;
+        }
+        MinecraftClient client = source.getClient();
+        Path root = client.runDirectory.toPath().resolve("dexmap");
+        String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path out = root.resolve("export").resolve(root.relativize(storeDir)).resolve(time);
+
+        int threads = dexmap.getConfig().rasterThreads > 0
+                ? dexmap.getConfig().rasterThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        export = new MapExporter(dexmap.getTileStore(), dexmap.getTileRasterizer().getStyle(), out, threads);
+        export.start(message -> client.execute(() -> source.sendFeedback(Text.literal(message))));
+        source.sendFeedback(Text.literal("Exporting map to " + out));
+        return 1;
+    }
+
+    private static int cancelExport(FabricClientCommandSource source) {
+        if (export == null || !export.isRunning()) {
+            source.sendError(Text.literal("No map export is running"));
+            return 0;
+        }
+        export.cancel();
+        source.sendFeedback(Text.literal("Cancelling map export"));
+        return 1;
+    }
+}
@@ -1,8 +1,16 @@
 package com.dexmap.input;
 
+import com.dexmap.Dexmap;
+import com.dexmap.DexmapClient;
 import com.dexmap.gui.WorldMapScreen;
+import com.dexmap.render.ChunkSnapshot;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.keybinding.v1.KeyBindingHelper;
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.option.KeyBinding;
 import net.minecraft.client.util.InputUtil;
 import org.lwjgl.glfw.GLFW;
@@ -10,6 +18,11 @@ import org.lwjgl.glfw.GLFW;
 public class KeybindingManager {
     private static KeyBinding worldMapKey;
     private static KeyBinding minimapToggleKey;
+    private static KeyBinding captureFixtureKey;
+    private static KeyBinding metricsOverlayKey;
+
+    // Chunks around the player saved by the fixture capture key
+    private static final int FIXTURE_RADIUS = 4;
 
     public static void register() {
         worldMapKey = KeyBindingHelper.registerKeyBinding(new KeyBinding(
@@ -26,6 +39,21 @@ public class KeybindingManager {
                 "category.dexmap.general"
         ));
 
+        // Developer aid: snapshot nearby chunks for the headless golden-image tests
+        captureFixtureKey = KeyBindingHelper.registerKeyBinding(new KeyBinding(
+                "key.dexmap.capture_fixture",
+                InputUtil.Type.KEYSYM,
+                GLFW.GLFW_KEY_UNKNOWN,
+                "category.dexmap.general"
+        ));
+
+        metricsOverlayKey = KeyBindingHelper.registerKeyBinding(new KeyBinding(
+                "key.dexmap.toggle_metrics",
+                InputUtil.Type.KEYSYM,
+                GLFW.GLFW_KEY_UNKNOWN,
+                "category.dexmap.general"
+        ));
+
         ClientTickEvents.END_CLIENT_TICK.register(client -> {
             if (worldMapKey.wasPressed()) {
                 client.setScreen(new WorldMapScreen());
@@ -35,6 +63,28 @@ public class KeybindingManager {
                 // Toggle minimap visibility
                 // Implementation depends on config system
             }
+
+            if (metricsOverlayKey.wasPressed()) {
+                var config = DexmapClient.getInstance().getConfig();
+                config.metricsOverlay = !config.metricsOverlay;
+            }
+
+            if (captureFixtureKey.wasPressed() && client.world != null && client.player != null) {
+                captureFixture(client);
+            }
         });
     }
+
+    private static void captureFixture(MinecraftClient client) {
+        ChunkSnapshot snapshot = ChunkSnapshot.capture(
+                client.world, client.player.getBlockX() >> 4, client.player.getBlockZ() >> 4, FIXTURE_RADIUS);
+        String name = "fixture-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path file = client.runDirectory.toPath().resolve("dexmap/fixtures/" + name + ChunkSnapshot.EXTENSION);
+        try {
+            snapshot.write(file);
+            Dexmap.LOGGER.info("Wrote map fixture {}", file);
+        } catch (IOException e) {
+            Dexmap.LOGGER.error("Failed to write map fixture {}: {}", file, e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package com.dexmap.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of durations in nanoseconds: four
+ * sub-buckets per power of two, so percentiles are within 25%. Recording
+ * is safe from any thread; {@link #drain} is called by one reader.
+ */
+public final class Histogram {
+    private static final int BUCKETS = 248;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Records the time since {@code startNanos}, a {@link System#nanoTime} reading. */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        sum.addAndGet(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+            // retry
+        }
+    }
+
+    /** Summarizes what was recorded since the last drain and starts over. */
+    Summary drain() {
+        long[] taken = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            taken[i] = counts.getAndSet(i, 0);
+            count += taken[i];
+        }
+        long total = sum.getAndSet(0);
+        long peak = max.getAndSet(0);
+        if (count == 0) return Summary.EMPTY;
+        return new Summary(count, total / count, percentile(taken, count, 0.50),
+                percentile(taken, count, 0.95), percentile(taken, count, 0.99), peak);
+    }
+
+    // Upper bound of the bucket holding the q-th value
+    private static long percentile(long[] counts, long total, double q) {
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    static int bucket(long v) {
+        if (v < 4) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - 2)) & 3;
+        return (exp - 1) * 4 + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 4) return bucket;
+        int exp = bucket / 4 + 1;
+        long step = 1L << (exp - 2);
+        return ((long) (4 + (bucket & 3)) << (exp - 2)) + step - 1;
+    }
+
+    /** Interval statistics in nanoseconds. */
+    public record Summary(long count, long mean, long p50, long p95, long p99, long max) {
+        static final Summary EMPTY = new Summary(0, 0, 0, 0, 0, 0);
+    }
+}
@@ -0,0 +1,92 @@
+package com.dexmap.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder events for the map pipeline, enabled by the bundled
+ * {@code dexmap.jfc} profile. Use them as
+ * {@code e.begin(); ...; if (e.shouldCommit()) { set fields; e.commit(); }}:
+ * with recording off the event is never committed and the JIT drops the
+ * allocation, so instrumented paths cost nothing.
+ */
+public final class MapEvents {
+    private static final String CATEGORY = "Dexmap";
+
+    @Name("dexmap.ChunkScan")
+    @Label("Chunk Scan")
+    @Description("Client chunk load or unload handled by the map")
+    @Category({CATEGORY, "Scan"})
+    @StackTrace(false)
+    public static final class ChunkScan extends jdk.jfr.Event {
+        @Label("Chunk X")
+        public int chunkX;
+        @Label("Chunk Z")
+        public int chunkZ;
+        @Label("Loaded")
+        @Description("True for a load, false for an unload")
+        public boolean loaded;
+    }
+
+    @Name("dexmap.Raster")
+    @Label("Tile Raster")
+    @Description("Worker job producing a chunk tile image")
+    @Category({CATEGORY, "Raster"})
+    @StackTrace(false)
+    public static final class Raster extends jdk.jfr.Event {
+        @Label("Chunk X")
+        public int chunkX;
+        @Label("Chunk Z")
+        public int chunkZ;
+        @Label("Kind")
+        @Description("full, partial or page-in")
+        public String kind;
+        @Label("Image Size")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("dexmap.Upload")
+    @Label("Tile Upload")
+    @Description("Render-thread upload of a finished tile into the atlas")
+    @Category({CATEGORY, "Render"})
+    @StackTrace(false)
+    public static final class Upload extends jdk.jfr.Event {
+        @Label("Chunk X")
+        public int chunkX;
+        @Label("Chunk Z")
+        public int chunkZ;
+        @Label("Width")
+        public int width;
+        @Label("Height")
+        public int height;
+        @Label("Uploaded Size")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("dexmap.Eviction")
+    @Label("Tile Eviction")
+    @Description("Resident tile texture released by the cache")
+    @Category({CATEGORY, "Cache"})
+    @StackTrace(false)
+    public static final class Eviction extends jdk.jfr.Event {
+        @Label("Chunk X")
+        public int chunkX;
+        @Label("Chunk Z")
+        public int chunkZ;
+        @Label("Released Size")
+        @DataAmount
+        public long bytes;
+        @Label("Resident Size")
+        @Description("Resident tile bytes after the eviction")
+        @DataAmount
+        public long residentBytes;
+    }
+
+    private MapEvents() {}
+}
@@ -0,0 +1,158 @@
+package com.dexmap.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of map pipeline metrics: timing histograms and event counters
+ * recorded from any thread, plus gauges polled at sampling time. Once a
+ * second {@link #tick} folds everything into a {@link Snapshot} for the
+ * debug overlay and the CSV log.
+ */
+public final class MapMetrics {
+    public static final long PERIOD_MILLIS = 1000;
+
+    private static final List<Histogram> TIMINGS = new ArrayList<>();
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+    private static final List<Gauge> GAUGES = new ArrayList<>();
+
+    // Worker sampling of a whole chunk
+    public static final Histogram SAMPLE = timing("sample");
+    // Worker job producing a tile image: sampling, shading, storing
+    public static final Histogram RASTER = timing("raster");
+    // Render-thread upload of one finished tile
+    public static final Histogram UPLOAD = timing("upload");
+    // Render-thread decode of a demoted tile's compact copy
+    public static final Histogram REHYDRATE = timing("rehydrate");
+    // Render-thread drawing of the minimap or world map per frame
+    public static final Histogram DRAW = timing("draw");
+
+    // Tile lookups that found a resident texture, or had to queue a raster
+    public static final Counter CACHE_HITS = counter("cache_hits");
+    public static final Counter CACHE_MISSES = counter("cache_misses");
+    // Tiles paged in from the tile store instead of sampled
+    public static final Counter PAGE_INS = counter("page_ins");
+    public static final Counter EVICTIONS = counter("evictions");
+    // Queued raster jobs dropped because their chunk unloaded or a newer job replaced them
+    public static final Counter CANCELLED = counter("cancelled");
+    // World reads retried because the client thread changed the chunk under the worker
+    public static final Counter RESAMPLES = counter("resamples");
+    // Demoted tiles brought back from their compact copy
+    public static final Counter REHYDRATIONS = counter("rehydrations");
+
+    // Gauge names, registered by DexmapClient
+    public static final String RASTER_QUEUE = "raster_queue";
+    public static final String UPLOAD_QUEUE = "upload_queue";
+    public static final String WRITE_QUEUE = "write_queue";
+    public static final String RESIDENT_TILES = "resident_tiles";
+    public static final String LOD_TILES = "lod_tiles";
+    public static final String TEXTURE_BYTES = "texture_bytes";
+    public static final String COMPACT_TILES = "compact_tiles";
+    public static final String COMPACT_BYTES = "compact_bytes";
+
+    private static volatile Snapshot latest;
+    private static long lastTick;
+
+    private static Histogram timing(String name) {
+        Histogram h = new Histogram(name);
+        TIMINGS.add(h);
+        return h;
+    }
+
+    private static Counter counter(String name) {
+        Counter c = new Counter(name);
+        COUNTERS.add(c);
+        return c;
+    }
+
+    /** Adds a value polled once per period, e.g. a queue depth. Register during client init. */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.add(new Gauge(name, value));
+    }
+
+    /**
+     * Takes a snapshot if a period has passed since the last one, and
+     * returns it; null otherwise. Client thread only, since gauges read
+     * render-thread state.
+     */
+    public static Snapshot tick(long nowMillis) {
+        if (lastTick == 0) lastTick = nowMillis;
+        long period = nowMillis - lastTick;
+        if (period < PERIOD_MILLIS) return null;
+        lastTick = nowMillis;
+
+        Histogram.Summary[] timings = new Histogram.Summary[TIMINGS.size()];
+        for (int i = 0; i < timings.length; i++) timings[i] = TIMINGS.get(i).drain();
+        long[] counts = new long[COUNTERS.size()];
+        for (int i = 0; i < counts.length; i++) counts[i] = COUNTERS.get(i).count.sumThenReset();
+        long[] gauges = new long[GAUGES.size()];
+        for (int i = 0; i < gauges.length; i++) gauges[i] = GAUGES.get(i).value.getAsLong();
+
+        Snapshot s = new Snapshot(nowMillis, period, timings, counts, gauges);
+        latest = s;
+        return s;
+    }
+
+    /** The most recent snapshot, or null before the first period ends. */
+    public static Snapshot latest() {
+        return latest;
+    }
+
+    public static List<String> timingNames() {
+        return TIMINGS.stream().map(Histogram::getName).toList();
+    }
+
+    public static List<String> counterNames() {
+        return COUNTERS.stream().map(c -> c.name).toList();
+    }
+
+    public static List<String> gaugeNames() {
+        return GAUGES.stream().map(g -> g.name).toList();
+    }
+
+    public static final class Counter {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+    }
+
+    private record Gauge(String name, LongSupplier value) {}
+
+    /**
+     * One period's worth of metrics, in registration order: timing
+     * summaries, counter totals for the period, and current gauge values.
+     */
+    public record Snapshot(long timeMillis, long periodMillis, Histogram.Summary[] timings, long[] counters,
+                           long[] gauges) {
+        public Histogram.Summary timing(Histogram h) {
+            return timings[TIMINGS.indexOf(h)];
+        }
+
+        public long count(Counter c) {
+            return counters[COUNTERS.indexOf(c)];
+        }
+
+        /** Per-second rate of a counter over the period. */
+        public double rate(Counter c) {
+            return count(c) * 1000.0 / periodMillis;
+        }
+
+        public long gauge(String name) {
+            for (int i = 0; i < GAUGES.size(); i++) {
+                if (GAUGES.get(i).name.equals(name)) return gauges[i];
+            }
+            return 0;
+        }
+    }
+
+    private MapMetrics() {}
+}
@@ -0,0 +1,82 @@
+package com.dexmap.metrics;
+
+import com.dexmap.Dexmap;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Appends one row per {@link MapMetrics} snapshot to a CSV file under
+ * {@code <game dir>/dexmap/metrics}, one file per session. Timings are in
+ * microseconds, counters are totals for the period. Client thread only.
+ */
+public final class MetricsCsv {
+    private final Path directory;
+    private BufferedWriter out;
+    private boolean failed;
+
+    public MetricsCsv(Path gameDirectory) {
+        this.directory = gameDirectory.resolve("dexmap/metrics");
+    }
+
+    public void append(MapMetrics.Snapshot s) {
+        if (failed) return;
+        try {
+            if (out == null) open();
+            StringBuilder row = new StringBuilder().append(s.timeMillis()).append(',').append(s.periodMillis());
+            for (Histogram.Summary t : s.timings()) {
+                row.append(',').append(t.count())
+                        .append(',').append(t.mean() / 1000)
+                        .append(',').append(t.p50() / 1000)
+                        .append(',').append(t.p95() / 1000)
+                        .append(',').append(t.p99() / 1000)
+                        .append(',').append(t.max() / 1000);
+            }
+            for (long c : s.counters()) row.append(',').append(c);
+            for (long g : s.gauges()) row.append(',').append(g);
+            out.write(row.toString());
+            out.newLine();
+            out.flush();
+        } catch (IOException e) {
+            // Don't retry every second
+            failed = true;
+            Dexmap.LOGGER.error("Failed to write map metrics: {}", e.getMessage());
+            close();
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        String name = "metrics-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".csv";
+        Path file = directory.resolve(name);
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+
+        StringBuilder header = new StringBuilder("time_ms,period_ms");
+        for (String t : MapMetrics.timingNames()) {
+            header.append(',').append(t).append("_count")
+                    .append(',').append(t).append("_mean_us")
+                    .append(',').append(t).append("_p50_us")
+                    .append(',').append(t).append("_p95_us")
+                    .append(',').append(t).append("_p99_us")
+                    .append(',').append(t).append("_max_us");
+        }
+        for (String c : MapMetrics.counterNames()) header.append(',').append(c);
+        for (String g : MapMetrics.gaugeNames()) header.append(',').append(g);
+        out.write(header.toString());
+        out.newLine();
+        Dexmap.LOGGER.info("Writing map metrics to {}", file);
+    }
+
+    public void close() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+}
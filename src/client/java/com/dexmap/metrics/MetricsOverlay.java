@@ -0,0 +1,61 @@
+package com.dexmap.metrics;
+
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+
+/** Debug text panel showing the latest {@link MapMetrics} snapshot. */
+public final class MetricsOverlay {
+    private static final int PADDING = 3;
+    private static final int LINE_HEIGHT = 10;
+    private static final int BACKGROUND = 0xA0000000;
+
+    /** Draws the panel with its top-right corner at (right, top). */
+    public static void draw(DrawContext ctx, TextRenderer tr, int right, int top) {
+        MapMetrics.Snapshot s = MapMetrics.latest();
+        String[] lines = s == null ? new String[]{"Dexmap metrics: collecting..."} : lines(s);
+
+        int width = 0;
+        for (String line : lines) width = Math.max(width, tr.getWidth(line));
+        int left = right - width - PADDING * 2;
+        ctx.fill(left, top, right, top + lines.length * LINE_HEIGHT + PADDING * 2, BACKGROUND);
+        for (int i = 0; i < lines.length; i++) {
+            ctx.drawTextWithShadow(tr, lines[i], left + PADDING, top + PADDING + i * LINE_HEIGHT, 0xFFE0E0E0);
+        }
+    }
+
+    private static String[] lines(MapMetrics.Snapshot s) {
+        long hits = s.count(MapMetrics.CACHE_HITS);
+        long lookups = hits + s.count(MapMetrics.CACHE_MISSES);
+        return new String[]{
+                timing("sample", s.timing(MapMetrics.SAMPLE)),
+                timing("raster", s.timing(MapMetrics.RASTER)),
+                timing("upload", s.timing(MapMetrics.UPLOAD)),
+                timing("rehydrate", s.timing(MapMetrics.REHYDRATE)),
+                timing("draw", s.timing(MapMetrics.DRAW)),
+                String.format("queue raster %d  upload %d  write %d  cancel %.0f/s",
+                        s.gauge(MapMetrics.RASTER_QUEUE), s.gauge(MapMetrics.UPLOAD_QUEUE),
+                        s.gauge(MapMetrics.WRITE_QUEUE), s.rate(MapMetrics.CANCELLED)),
+                String.format("cache hit %s  page-in %.0f/s  evict %.0f/s",
+                        lookups == 0 ? "-" : String.format("%.1f%%", hits * 100.0 / lookups),
+                        s.rate(MapMetrics.PAGE_INS), s.rate(MapMetrics.EVICTIONS)),
+                String.format("tiles %d chunk  %d lod  %.1f MiB",
+                        s.gauge(MapMetrics.RESIDENT_TILES), s.gauge(MapMetrics.LOD_TILES),
+                        s.gauge(MapMetrics.TEXTURE_BYTES) / (1024.0 * 1024.0)),
+                String.format("compact %d  %.1f MiB  rehydrate %.0f/s",
+                        s.gauge(MapMetrics.COMPACT_TILES), s.gauge(MapMetrics.COMPACT_BYTES) / (1024.0 * 1024.0),
+                        s.rate(MapMetrics.REHYDRATIONS)),
+        };
+    }
+
+    private static String timing(String label, Histogram.Summary t) {
+        if (t.count() == 0) return label + " -";
+        return String.format("%s %d  p50 %s  p95 %s  max %s ms",
+                label, t.count(), ms(t.p50()), ms(t.p95()), ms(t.max()));
+    }
+
+    private static String ms(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+
+    private MetricsOverlay() {}
+}
@@ -0,0 +1,14 @@
+package com.dexmap.mixin.client;
+
+import net.minecraft.client.color.block.BlockColorProvider;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.util.collection.IdList;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(BlockColors.class)
+public interface BlockColorsAccessor {
+	// Indexed by block raw ID; a non-null entry means the block is tinted per position
+	@Accessor("providers")
+	IdList<BlockColorProvider> dexmap$getProviders();
+}
@@ -0,0 +1,33 @@
+package com.dexmap.mixin.client;
+
+import com.dexmap.DexmapClient;
+import com.dexmap.world.ChunkScanner;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.network.packet.s2c.play.BlockUpdateS2CPacket;
+import net.minecraft.network.packet.s2c.play.ChunkDeltaUpdateS2CPacket;
+import net.minecraft.util.math.BlockPos;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ClientPlayNetworkHandler.class)
+public class ClientPlayNetworkHandlerMixin {
+	// Both handlers re-dispatch to the client thread before applying, so TAIL runs there
+	// after the world has been updated
+	@Inject(at = @At("TAIL"), method = "onBlockUpdate")
+	private void dexmap$onBlockUpdate(BlockUpdateS2CPacket packet, CallbackInfo info) {
+		BlockPos pos = packet.getPos();
+		scanner().onBlockChanged(pos.getX(), pos.getZ());
+	}
+
+	@Inject(at = @At("TAIL"), method = "onChunkDeltaUpdate")
+	private void dexmap$onChunkDeltaUpdate(ChunkDeltaUpdateS2CPacket packet, CallbackInfo info) {
+		ChunkScanner scanner = scanner();
+		packet.visitUpdates((pos, state) -> scanner.onBlockChanged(pos.getX(), pos.getZ()));
+	}
+
+	private static ChunkScanner scanner() {
+		return DexmapClient.getInstance().getChunkScanner();
+	}
+}
@@ -0,0 +1,156 @@
+package com.dexmap.render;
+
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Biome tints for one chunk, box-blurred over the blend radius. Each tint
+ * is fetched once per block over the chunk plus an r-wide border, then
+ * averaged with a separable running-sum filter, so the cost per column no
+ * longer grows with the radius.
+ *
+ * Results match {@code TerrainSampler}'s per-column average exactly: the
+ * channel sums are the same integers, divided the same way. Each tint kind
+ * is only computed on first use. Reused across chunks via {@link #reset};
+ * not thread-safe, each worker owns one through its {@link ColumnBuffer}.
+ */
+final class BiomeBlend {
+    @FunctionalInterface
+    private interface Tint {
+        int get(TerrainView view, int x, int z);
+    }
+
+    private static final int SIZE = 16;
+
+    private TerrainView view;
+    private int originX;
+    private int originZ;
+    private int radius;
+
+    // Blended RGB per column, row-major [z * 16 + x]; valid once computed for the current chunk
+    private final int[] grass = new int[SIZE * SIZE];
+    private final int[] foliage = new int[SIZE * SIZE];
+    private final int[] water = new int[SIZE * SIZE];
+    private boolean grassReady;
+    private boolean foliageReady;
+    private boolean waterReady;
+
+    // Scratch grids, grown to the largest radius seen
+    private int[] raw = new int[0];
+    private int[] hr = new int[0];
+    private int[] hg = new int[0];
+    private int[] hb = new int[0];
+
+    /** Points the blend at another chunk; tints are recomputed lazily. */
+    void reset(TerrainView view, ChunkPos chunk, int radius) {
+        this.view = view;
+        this.originX = chunk.getStartX();
+        this.originZ = chunk.getStartZ();
+        this.radius = Math.max(0, radius);
+        grassReady = foliageReady = waterReady = false;
+
+        int span = SIZE + 2 * this.radius;
+        if (raw.length < span * span) {
+            raw = new int[span * span];
+            hr = new int[span * SIZE];
+            hg = new int[span * SIZE];
+            hb = new int[span * SIZE];
+        }
+    }
+
+    /** Drops the terrain reference so an idle worker doesn't pin the world. */
+    void release() {
+        view = null;
+    }
+
+    /** True if world column (x, z) lies in this chunk. */
+    boolean covers(int x, int z) {
+        return x - originX >= 0 && x - originX < SIZE && z - originZ >= 0 && z - originZ < SIZE;
+    }
+
+    int grass(int x, int z) {
+        if (!grassReady) {
+            blend(TerrainView::getGrassColor, grass);
+            grassReady = true;
+        }
+        return grass[(z - originZ) * SIZE + (x - originX)];
+    }
+
+    int foliage(int x, int z) {
+        if (!foliageReady) {
+            blend(TerrainView::getFoliageColor, foliage);
+            foliageReady = true;
+        }
+        return foliage[(z - originZ) * SIZE + (x - originX)];
+    }
+
+    int water(int x, int z) {
+        if (!waterReady) {
+            blend(TerrainView::getWaterColor, water);
+            waterReady = true;
+        }
+        return water[(z - originZ) * SIZE + (x - originX)];
+    }
+
+    private void blend(Tint tint, int[] blended) {
+        int r = radius;
+        int span = SIZE + 2 * r;
+
+        // One biome lookup per block of the bordered grid
+        for (int z = 0; z < span; z++) {
+            for (int x = 0; x < span; x++) {
+                raw[z * span + x] = tint.get(view, originX - r + x, originZ - r + z);
+            }
+        }
+        if (r == 0) {
+            System.arraycopy(raw, 0, blended, 0, SIZE * SIZE);
+            return;
+        }
+
+        // Horizontal pass: per-channel sums of each (2r+1)-wide window, for every grid row
+        int window = 2 * r + 1;
+        for (int z = 0; z < span; z++) {
+            int row = z * span;
+            int sr = 0, sg = 0, sb = 0;
+            for (int x = 0; x < window; x++) {
+                int c = raw[row + x];
+                sr += (c >> 16) & 0xFF;
+                sg += (c >> 8) & 0xFF;
+                sb += c & 0xFF;
+            }
+            for (int x = 0; x < SIZE; x++) {
+                int out = z * SIZE + x;
+                hr[out] = sr;
+                hg[out] = sg;
+                hb[out] = sb;
+                if (x + 1 < SIZE) {
+                    int add = raw[row + x + window];
+                    int sub = raw[row + x];
+                    sr += ((add >> 16) & 0xFF) - ((sub >> 16) & 0xFF);
+                    sg += ((add >> 8) & 0xFF) - ((sub >> 8) & 0xFF);
+                    sb += (add & 0xFF) - (sub & 0xFF);
+                }
+            }
+        }
+
+        // Vertical pass over the row sums, then the same truncating division as before
+        int n = window * window;
+        for (int x = 0; x < SIZE; x++) {
+            int sr = 0, sg = 0, sb = 0;
+            for (int z = 0; z < window; z++) {
+                sr += hr[z * SIZE + x];
+                sg += hg[z * SIZE + x];
+                sb += hb[z * SIZE + x];
+            }
+            for (int z = 0; z < SIZE; z++) {
+                blended[z * SIZE + x] = ((sr / n) << 16) | ((sg / n) << 8) | (sb / n);
+                if (z + 1 < SIZE) {
+                    int add = (z + window) * SIZE + x;
+                    int sub = z * SIZE + x;
+                    sr += hr[add] - hr[sub];
+                    sg += hg[add] - hg[sub];
+                    sb += hb[add] - hb[sub];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.dexmap.render;
+
+import com.dexmap.mixin.client.BlockColorsAccessor;
+import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.MapColor;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.color.block.BlockColorProvider;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.registry.Registries;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.collection.IdList;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Base map color per block state, indexed by raw state ID. Most states
+ * resolve to the same color everywhere, so they are resolved once; states
+ * with a block color provider (grass-like tints, redstone power, stems...)
+ * can vary by position or biome and are resolved on every call.
+ *
+ * Safe to call from raster workers: racing resolves write the same value.
+ */
+public final class BlockColorCache {
+    public static final Identifier RELOAD_ID = Identifier.of("dexmap", "block_colors");
+
+    // Cached entries carry an opaque alpha so 0 can mean "not resolved yet"
+    private static final int UNRESOLVED = 0;
+    private static final int DYNAMIC = 1;
+    private static final int RESOLVED = 0xFF000000;
+
+    private static final MinecraftClient MC = MinecraftClient.getInstance();
+
+    private static volatile int[] colors = new int[0];
+
+    /** Resolved RGB (no alpha) for a visible block. */
+    public static int get(BlockState state, ClientWorld world, BlockPos pos) {
+        int id = Block.getRawIdFromState(state);
+        if (id < 0) return resolve(state, world, pos);
+        int[] table = colors;
+        if (id >= table.length) table = grow(id);
+
+        int cached = table[id];
+        if (cached == DYNAMIC) return resolve(state, world, pos);
+        if (cached != UNRESOLVED) return cached & 0xFFFFFF;
+
+        if (isTinted(state)) {
+            table[id] = DYNAMIC;
+            return resolve(state, world, pos);
+        }
+        int color = resolve(state, world, pos);
+        table[id] = RESOLVED | color;
+        return color;
+    }
+
+    /** Forgets every resolved color; the next lookups resolve again. */
+    public static void invalidate() {
+        colors = new int[0];
+    }
+
+    public static SimpleSynchronousResourceReloadListener reloadListener() {
+        return new SimpleSynchronousResourceReloadListener() {
+            @Override
+            public Identifier getFabricId() {
+                return RELOAD_ID;
+            }
+
+            @Override
+            public void reload(ResourceManager manager) {
+                invalidate();
+            }
+        };
+    }
+
+    private static synchronized int[] grow(int id) {
+        int[] table = colors;
+        if (id >= table.length) {
+            // STATE_IDS is complete once the registries are frozen; size to it
+            table = new int[Math.max(Block.STATE_IDS.size(), id + 1)];
+            colors = table;
+        }
+        return table;
+    }
+
+    private static boolean isTinted(BlockState state) {
+        BlockColors blockColors = MC != null ? MC.getBlockColors() : null;
+        // Too early to tell: treat as tinted until the next resource reload clears it
+        if (blockColors == null) return true;
+        IdList<BlockColorProvider> providers = ((BlockColorsAccessor) blockColors).dexmap$getProviders();
+        return providers.get(Registries.BLOCK.getRawId(state.getBlock())) != null;
+    }
+
+    private static int resolve(BlockState state, ClientWorld world, BlockPos pos) {
+        // Try block color provider first
+        int color = -1;
+        try {
+            if (MC != null && MC.getBlockColors() != null) {
+                color = MC.getBlockColors().getColor(state, world, pos, 0);
+            }
+        } catch (Exception ignored) {}
+        if (color == -1 || color == 0xFFFFFF) {
+            MapColor mc = state.getMapColor(world, pos);
+            color = (mc != MapColor.CLEAR) ? mc.getRenderColor(2) : 0x888888;
+        }
+        return color & 0xFFFFFF;
+    }
+
+    private BlockColorCache() {}
+}
@@ -0,0 +1,78 @@
+package com.dexmap.render;
+
+import com.dexmap.data.ConcurrentLongTileMap;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Relief heights along the four edges of each rasterized chunk (64 ints
+ * per chunk, laid out like {@link ColumnBuffer#edgeRelief} but for the
+ * chunk's own border). Neighbours read them instead of sampling the world,
+ * and a change tells which neighbour seams need re-shading.
+ *
+ * Entries are replaced, never mutated, so readers need no locking.
+ */
+public class BorderRibbons {
+    private final ConcurrentLongTileMap<int[]> ribbons = new ConcurrentLongTileMap<>();
+
+    /** The chunk's ribbon, or null if it hasn't been rasterized (or has unloaded). */
+    public int[] get(int chunkX, int chunkZ) {
+        return ribbons.get(ChunkPos.toLong(chunkX, chunkZ));
+    }
+
+    /**
+     * Stores the chunk's edge heights from freshly sampled columns; only
+     * columns in {@code sampled} are taken (null = all). Returns the
+     * ColumnBuffer.EDGE_* bits of the sides whose heights changed, or of
+     * every sampled side if there was no previous ribbon.
+     */
+    public int publish(ChunkPos pos, ColumnBuffer columns, long[] sampled) {
+        long key = pos.toLong();
+        int[] old = ribbons.get(key);
+        int[] next = old != null ? old.clone() : new int[4 * 16];
+        int changed = 0;
+        for (int k = 0; k < 16; k++) {
+            changed |= copy(columns, sampled, k, 0, next, 0, k, ColumnBuffer.EDGE_NORTH, old);
+            changed |= copy(columns, sampled, k, 15, next, 16, k, ColumnBuffer.EDGE_SOUTH, old);
+            changed |= copy(columns, sampled, 0, k, next, 32, k, ColumnBuffer.EDGE_WEST, old);
+            changed |= copy(columns, sampled, 15, k, next, 48, k, ColumnBuffer.EDGE_EAST, old);
+        }
+        if (old == null || changed != 0) ribbons.put(key, next);
+        return changed;
+    }
+
+    private static int copy(
+            ColumnBuffer columns, long[] sampled, int x, int z, int[] next, int offset, int k, int edge, int[] old
+    ) {
+        int i = z * 16 + x;
+        if (sampled != null && !ColumnMask.get(sampled, i)) return 0;
+        int h = columns.reliefY[i];
+        next[offset + k] = h;
+        return old == null || old[offset + k] != h ? edge : 0;
+    }
+
+    public void remove(int chunkX, int chunkZ) {
+        ribbons.remove(ChunkPos.toLong(chunkX, chunkZ));
+    }
+
+    public void clear() {
+        ribbons.clear();
+    }
+
+    public int size() {
+        return ribbons.size();
+    }
+
+    /** The side of a neighbour that faces back across {@code edge}. */
+    public static int opposite(int edge) {
+        if (edge == ColumnBuffer.EDGE_NORTH) return ColumnBuffer.EDGE_SOUTH;
+        if (edge == ColumnBuffer.EDGE_SOUTH) return ColumnBuffer.EDGE_NORTH;
+        if (edge == ColumnBuffer.EDGE_WEST) return ColumnBuffer.EDGE_EAST;
+        return ColumnBuffer.EDGE_WEST;
+    }
+
+    /** Copies one side of a ribbon into {@code dst}. */
+    static void copySide(int[] ribbon, int edge, int[] dst, int dstOffset) {
+        int from = ColumnBuffer.edgeOffset(edge);
+        System.arraycopy(ribbon, from, dst, dstOffset, 16);
+    }
+}
@@ -0,0 +1,360 @@
+package com.dexmap.render;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.Heightmap;
+
+/**
+ * A rectangle of chunks frozen to exactly what {@link TerrainSampler}
+ * reads: three heightmaps, the top {@link #STACK} blocks, biome tints and
+ * the resolved block color of each column. Captured in game with
+ * {@link #capture}, it renders the same tiles headless, without a client
+ * or registries beyond the vanilla bootstrap.
+ *
+ * File format (gzip): magic, version, bottom Y, sea level, area origin and
+ * size in chunks, a loaded flag per chunk, a palette of block ids, then
+ * per column (row-major over the whole area) the three heightmap tops,
+ * grass, foliage, water and block colors, and {@link #STACK} palette
+ * indices from the surface down. Block states are stored by id, so
+ * properties fall back to defaults.
+ */
+public final class ChunkSnapshot implements TerrainView {
+    public static final String EXTENSION = ".dxsnap";
+    // Surface block plus the blocks the sampler may walk down through
+    public static final int STACK = 17;
+
+    private static final int MAGIC = 0x4458534E; // "DXSN"
+    private static final int VERSION = 1;
+
+    private final int bottomY;
+    private final int seaLevel;
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int widthChunks;
+    private final int depthChunks;
+    private final boolean[] loaded;
+
+    private final int width;
+    private final int depth;
+    private final int[] topSurface;
+    private final int[] topMotion;
+    private final int[] topOcean;
+    private final int[] grass;
+    private final int[] foliage;
+    private final int[] water;
+    private final int[] blockColor;
+    private final short[] stack;
+    private final List<BlockState> palette;
+    private final BlockState air = Blocks.AIR.getDefaultState();
+
+    private ChunkSnapshot(
+            int bottomY, int seaLevel, int minChunkX, int minChunkZ, int widthChunks, int depthChunks,
+            List<BlockState> palette
+    ) {
+        this.bottomY = bottomY;
+        this.seaLevel = seaLevel;
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.widthChunks = widthChunks;
+        this.depthChunks = depthChunks;
+        this.loaded = new boolean[widthChunks * depthChunks];
+        this.width = widthChunks * 16;
+        this.depth = depthChunks * 16;
+        int columns = width * depth;
+        this.topSurface = new int[columns];
+        this.topMotion = new int[columns];
+        this.topOcean = new int[columns];
+        this.grass = new int[columns];
+        this.foliage = new int[columns];
+        this.water = new int[columns];
+        this.blockColor = new int[columns];
+        this.stack = new short[columns * STACK];
+        this.palette = palette;
+    }
+
+    /** Snapshot of the loaded chunks within {@code radius} of a chunk. Client thread. */
+    public static ChunkSnapshot capture(ClientWorld world, int centerChunkX, int centerChunkZ, int radius) {
+        WorldTerrain terrain = new WorldTerrain().bind(world);
+        ChunkSnapshot snapshot = capture(
+                terrain, centerChunkX - radius, centerChunkZ - radius, radius * 2 + 1, radius * 2 + 1);
+        terrain.release();
+        return snapshot;
+    }
+
+    /** Snapshot of a rectangle of chunks from any terrain source; unloaded chunks stay unloaded. */
+    public static ChunkSnapshot capture(
+            TerrainView source, int minChunkX, int minChunkZ, int widthChunks, int depthChunks
+    ) {
+        ChunkSnapshot s = new ChunkSnapshot(source.getBottomY(), source.getSeaLevel(),
+                minChunkX, minChunkZ, widthChunks, depthChunks, new ArrayList<>());
+        Map<BlockState, Integer> index = new IdentityHashMap<>();
+        Recorder recorder = new Recorder(source, s);
+        ColumnBuffer columns = new ColumnBuffer();
+
+        for (int cz = 0; cz < depthChunks; cz++) {
+            for (int cx = 0; cx < widthChunks; cx++) {
+                if (!source.isChunkLoaded(minChunkX + cx, minChunkZ + cz)) continue;
+                s.loaded[cz * widthChunks + cx] = true;
+                for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+                    s.captureColumn(source, cx * 16 + (i & 15), cz * 16 + (i >> 4), index);
+                }
+                // Block colors are whatever the sampler resolves for each column's visible block
+                TerrainSampler.sampleColumns(
+                        recorder, new ChunkPos(minChunkX + cx, minChunkZ + cz), null, null, 0, columns);
+            }
+        }
+        return s;
+    }
+
+    private void captureColumn(TerrainView source, int lx, int lz, Map<BlockState, Integer> index) {
+        int x = minChunkX * 16 + lx;
+        int z = minChunkZ * 16 + lz;
+        int c = lz * width + lx;
+        topSurface[c] = source.getTopY(Heightmap.Type.WORLD_SURFACE, x, z);
+        topMotion[c] = source.getTopY(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, x, z);
+        topOcean[c] = source.getTopY(Heightmap.Type.OCEAN_FLOOR, x, z);
+        grass[c] = source.getGrassColor(x, z);
+        foliage[c] = source.getFoliageColor(x, z);
+        water[c] = source.getWaterColor(x, z);
+        int surfaceY = Math.max(bottomY, topSurface[c] - 1);
+        for (int k = 0; k < STACK; k++) {
+            BlockState state = source.getBlockState(x, surfaceY - k, z);
+            Integer p = index.get(state);
+            if (p == null) {
+                p = palette.size();
+                palette.add(state);
+                index.put(state, p);
+            }
+            stack[c * STACK + k] = (short) (int) p;
+        }
+    }
+
+    public void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(bottomY);
+            out.writeInt(seaLevel);
+            out.writeInt(minChunkX);
+            out.writeInt(minChunkZ);
+            out.writeInt(widthChunks);
+            out.writeInt(depthChunks);
+            for (boolean l : loaded) out.writeBoolean(l);
+            out.writeInt(palette.size());
+            for (BlockState state : palette) {
+                out.writeUTF(Registries.BLOCK.getId(state.getBlock()).toString());
+            }
+            for (int c = 0; c < width * depth; c++) {
+                out.writeInt(topSurface[c]);
+                out.writeInt(topMotion[c]);
+                out.writeInt(topOcean[c]);
+                out.writeInt(grass[c]);
+                out.writeInt(foliage[c]);
+                out.writeInt(water[c]);
+                out.writeInt(blockColor[c]);
+                for (int k = 0; k < STACK; k++) out.writeShort(stack[c * STACK + k]);
+            }
+        }
+    }
+
+    public static ChunkSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a chunk snapshot: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            int bottomY = in.readInt();
+            int seaLevel = in.readInt();
+            int minChunkX = in.readInt();
+            int minChunkZ = in.readInt();
+            int widthChunks = in.readInt();
+            int depthChunks = in.readInt();
+            ChunkSnapshot s = new ChunkSnapshot(
+                    bottomY, seaLevel, minChunkX, minChunkZ, widthChunks, depthChunks, new ArrayList<>());
+            for (int i = 0; i < s.loaded.length; i++) s.loaded[i] = in.readBoolean();
+            int paletteSize = in.readInt();
+            for (int i = 0; i < paletteSize; i++) {
+                s.palette.add(Registries.BLOCK.get(Identifier.of(in.readUTF())).getDefaultState());
+            }
+            for (int c = 0; c < s.width * s.depth; c++) {
+                s.topSurface[c] = in.readInt();
+                s.topMotion[c] = in.readInt();
+                s.topOcean[c] = in.readInt();
+                s.grass[c] = in.readInt();
+                s.foliage[c] = in.readInt();
+                s.water[c] = in.readInt();
+                s.blockColor[c] = in.readInt();
+                for (int k = 0; k < STACK; k++) s.stack[c * STACK + k] = in.readShort();
+            }
+            return s;
+        }
+    }
+
+    public int getMinChunkX() {
+        return minChunkX;
+    }
+
+    public int getMinChunkZ() {
+        return minChunkZ;
+    }
+
+    public int getWidthChunks() {
+        return widthChunks;
+    }
+
+    public int getDepthChunks() {
+        return depthChunks;
+    }
+
+    // Column index, or -1 outside the captured area
+    private int column(int x, int z) {
+        int lx = x - minChunkX * 16;
+        int lz = z - minChunkZ * 16;
+        if (lx < 0 || lz < 0 || lx >= width || lz >= depth) return -1;
+        return lz * width + lx;
+    }
+
+    // Tints outside the area (the blend border) repeat the nearest captured column
+    private int clampedColumn(int x, int z) {
+        int lx = Math.max(0, Math.min(width - 1, x - minChunkX * 16));
+        int lz = Math.max(0, Math.min(depth - 1, z - minChunkZ * 16));
+        return lz * width + lx;
+    }
+
+    @Override
+    public int getBottomY() {
+        return bottomY;
+    }
+
+    @Override
+    public int getSeaLevel() {
+        return seaLevel;
+    }
+
+    @Override
+    public boolean isChunkLoaded(int chunkX, int chunkZ) {
+        int cx = chunkX - minChunkX;
+        int cz = chunkZ - minChunkZ;
+        return cx >= 0 && cz >= 0 && cx < widthChunks && cz < depthChunks && loaded[cz * widthChunks + cx];
+    }
+
+    @Override
+    public int getTopY(Heightmap.Type type, int x, int z) {
+        int c = column(x, z);
+        if (c < 0) return bottomY;
+        return switch (type) {
+            case OCEAN_FLOOR, OCEAN_FLOOR_WG -> topOcean[c];
+            case MOTION_BLOCKING_NO_LEAVES -> topMotion[c];
+            default -> topSurface[c];
+        };
+    }
+
+    @Override
+    public BlockState getBlockState(int x, int y, int z) {
+        int c = column(x, z);
+        if (c < 0) return air;
+        int k = Math.max(bottomY, topSurface[c] - 1) - y;
+        if (k < 0) return air;
+        // Below the captured stack, repeat its deepest block
+        return palette.get(stack[c * STACK + Math.min(k, STACK - 1)]);
+    }
+
+    @Override
+    public int getGrassColor(int x, int z) {
+        return grass[clampedColumn(x, z)];
+    }
+
+    @Override
+    public int getFoliageColor(int x, int z) {
+        return foliage[clampedColumn(x, z)];
+    }
+
+    @Override
+    public int getWaterColor(int x, int z) {
+        return water[clampedColumn(x, z)];
+    }
+
+    @Override
+    public int getBlockColor(BlockState state, int x, int y, int z) {
+        int c = column(x, z);
+        return c < 0 ? 0 : blockColor[c];
+    }
+
+    // Passes reads through to the source, noting the block color resolved for each column
+    private static final class Recorder implements TerrainView {
+        private final TerrainView source;
+        private final ChunkSnapshot target;
+
+        Recorder(TerrainView source, ChunkSnapshot target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public int getBottomY() {
+            return source.getBottomY();
+        }
+
+        @Override
+        public int getSeaLevel() {
+            return source.getSeaLevel();
+        }
+
+        @Override
+        public boolean isChunkLoaded(int chunkX, int chunkZ) {
+            return source.isChunkLoaded(chunkX, chunkZ);
+        }
+
+        @Override
+        public int getTopY(Heightmap.Type type, int x, int z) {
+            return source.getTopY(type, x, z);
+        }
+
+        @Override
+        public BlockState getBlockState(int x, int y, int z) {
+            return source.getBlockState(x, y, z);
+        }
+
+        @Override
+        public int getGrassColor(int x, int z) {
+            return source.getGrassColor(x, z);
+        }
+
+        @Override
+        public int getFoliageColor(int x, int z) {
+            return source.getFoliageColor(x, z);
+        }
+
+        @Override
+        public int getWaterColor(int x, int z) {
+            return source.getWaterColor(x, z);
+        }
+
+        @Override
+        public int getBlockColor(BlockState state, int x, int y, int z) {
+            int rgb = source.getBlockColor(state, x, y, z);
+            int c = target.column(x, z);
+            if (c >= 0) target.blockColor[c] = rgb;
+            return rgb;
+        }
+    }
+}
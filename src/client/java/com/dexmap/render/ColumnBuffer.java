@@ -0,0 +1,95 @@
+package com.dexmap.render;
+
+/**
+ * Sampled surface of one chunk as parallel primitive arrays, indexed
+ * {@code z * 16 + x}. Filled by {@link TerrainSampler#sampleChunk} (or
+ * loaded from a stored {@link ColumnModel}) and reused for every chunk a
+ * thread rasterizes, so the sampling path doesn't allocate once the
+ * thread's buffer exists.
+ */
+public final class ColumnBuffer {
+    public static final int COLUMNS = 16 * 16;
+
+    // Column flags
+    public static final int WATER = 1;
+    public static final int LEAVES = 1 << 1;
+    public static final int TREE_CANOPY = 1 << 2;
+    public static final int GRASS_BLOCK = 1 << 3;
+    public static final int SNOW = 1 << 4;
+
+    // Neighbour edges, as bits of edgeMask
+    public static final int EDGE_NORTH = 1;
+    public static final int EDGE_SOUTH = 1 << 1;
+    public static final int EDGE_WEST = 1 << 2;
+    public static final int EDGE_EAST = 1 << 3;
+
+    private static final ThreadLocal<ColumnBuffer> LOCAL = ThreadLocal.withInitial(ColumnBuffer::new);
+
+    public final int[] surfaceY = new int[COLUMNS];    // WORLD_SURFACE - 1
+    public final int[] terrainY = new int[COLUMNS];    // MOTION_BLOCKING_NO_LEAVES - 1
+    public final int[] oceanFloorY = new int[COLUMNS]; // OCEAN_FLOOR - 1
+    public final int[] reliefY = new int[COLUMNS];     // height used for shading
+    public final int[] flags = new int[COLUMNS];
+    // biome-blended, RGB (no alpha)
+    public final int[] baseColor = new int[COLUMNS];
+
+    // Relief heights of the adjacent columns in the neighbouring chunks: north, south,
+    // west, east, 16 each along the shared edge. Only valid for edges set in edgeMask.
+    public final int[] edgeRelief = new int[4 * 16];
+    public int edgeMask;
+    public int seaLevel;
+
+    // Scratch state for the sampler
+    final WorldTerrain worldTerrain = new WorldTerrain();
+    final BiomeBlend blend = new BiomeBlend();
+    final long[] shadeMask = ColumnMask.create();
+    final long[] sampleMask = ColumnMask.create();
+
+    /** The calling thread's buffer. Contents are overwritten by the next sample. */
+    public static ColumnBuffer get() {
+        return LOCAL.get();
+    }
+
+    public static int index(int x, int z) {
+        return (z & 15) * 16 + (x & 15);
+    }
+
+    static int edgeOffset(int edge) {
+        return Integer.numberOfTrailingZeros(edge) * 16;
+    }
+
+    /**
+     * Relief height at chunk-local (x, z), where one coordinate may be -1 or
+     * 16 to reach into a neighbour. Falls back to this chunk's edge when the
+     * neighbour wasn't loaded.
+     */
+    public int reliefAt(int x, int z) {
+        if (x >= 0 && x < 16 && z >= 0 && z < 16) return reliefY[z * 16 + x];
+        int edge;
+        int k;
+        if (z < 0) {
+            edge = EDGE_NORTH;
+            k = x;
+        } else if (z > 15) {
+            edge = EDGE_SOUTH;
+            k = x;
+        } else if (x < 0) {
+            edge = EDGE_WEST;
+            k = z;
+        } else {
+            edge = EDGE_EAST;
+            k = z;
+        }
+        k = Math.max(0, Math.min(15, k));
+        if ((edgeMask & edge) != 0) return edgeRelief[edgeOffset(edge) + k];
+        return reliefY[Math.max(0, Math.min(15, z)) * 16 + Math.max(0, Math.min(15, x))];
+    }
+
+    public boolean has(int i, int flag) {
+        return (flags[i] & flag) != 0;
+    }
+
+    public int waterDepth(int i) {
+        return Math.max(0, surfaceY[i] - oceanFloorY[i]);
+    }
+}
@@ -0,0 +1,103 @@
+package com.dexmap.render;
+
+import java.util.Arrays;
+
+/**
+ * 256-bit set of a chunk's block columns, stored in four longs. Bit
+ * {@code z * 16 + x}, matching {@link ColumnBuffer}'s column order.
+ */
+public final class ColumnMask {
+    public static final int WORDS = 4;
+    // bounds() of a full mask
+    public static final int FULL_BOUNDS = 15 << 16 | 15 << 24;
+
+    public static long[] create() {
+        return new long[WORDS];
+    }
+
+    public static long[] all() {
+        long[] mask = create();
+        Arrays.fill(mask, -1L);
+        return mask;
+    }
+
+    public static void set(long[] mask, int x, int z) {
+        int i = (z & 15) * 16 + (x & 15);
+        mask[i >>> 6] |= 1L << i;
+    }
+
+    public static boolean get(long[] mask, int i) {
+        return (mask[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public static boolean isEmpty(long[] mask) {
+        return (mask[0] | mask[1] | mask[2] | mask[3]) == 0;
+    }
+
+    public static boolean isFull(long[] mask) {
+        return (mask[0] & mask[1] & mask[2] & mask[3]) == -1L;
+    }
+
+    public static void or(long[] dst, long[] src) {
+        for (int w = 0; w < WORDS; w++) dst[w] |= src[w];
+    }
+
+    /** Sets the 16 columns along one chunk edge (ColumnBuffer.EDGE_* bit). */
+    public static void setEdge(long[] mask, int edge) {
+        for (int k = 0; k < 16; k++) {
+            if (edge == ColumnBuffer.EDGE_NORTH) set(mask, k, 0);
+            else if (edge == ColumnBuffer.EDGE_SOUTH) set(mask, k, 15);
+            else if (edge == ColumnBuffer.EDGE_WEST) set(mask, 0, k);
+            else set(mask, 15, k);
+        }
+    }
+
+    public static void clear(long[] mask) {
+        Arrays.fill(mask, 0L);
+    }
+
+    /** Grows {@code src} by one column in the four axis directions into {@code dst} (a different array). */
+    public static void dilate(long[] src, long[] dst) {
+        // Each word holds four 16-column rows
+        for (int w = 0; w < WORDS; w++) {
+            long m = src[w];
+            // Neighbours along x, without wrapping across rows
+            long grown = m
+                    | ((m << 1) & 0xFFFEFFFEFFFEFFFEL)
+                    | ((m >>> 1) & 0x7FFF7FFF7FFF7FFFL);
+            // Neighbours along z: one row (16 bits) up and down, carrying between words
+            grown |= (m << 16) | (m >>> 16);
+            if (w > 0) grown |= src[w - 1] >>> 48;
+            if (w < WORDS - 1) grown |= src[w + 1] << 48;
+            dst[w] = grown;
+        }
+    }
+
+    /** True if any column lies on the given chunk edge (ColumnBuffer.EDGE_* bit). */
+    public static boolean touchesEdge(long[] mask, int edge) {
+        long rows = mask[0] | mask[1] | mask[2] | mask[3];
+        if (edge == ColumnBuffer.EDGE_NORTH) return (mask[0] & 0xFFFFL) != 0;
+        if (edge == ColumnBuffer.EDGE_SOUTH) return (mask[3] & 0xFFFF000000000000L) != 0;
+        if (edge == ColumnBuffer.EDGE_WEST) return (rows & 0x0001000100010001L) != 0;
+        return (rows & 0x8000800080008000L) != 0;
+    }
+
+    /**
+     * Bounding box of the mask in columns as {@code minX | minZ << 8 | maxX << 16 | maxZ << 24},
+     * or -1 if empty.
+     */
+    public static int bounds(long[] mask) {
+        int minX = 16, minZ = 16, maxX = -1, maxZ = -1;
+        for (int i = 0; i < 256; i++) {
+            if (!get(mask, i)) continue;
+            int x = i & 15, z = i >> 4;
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (z < minZ) minZ = z;
+            if (z > maxZ) maxZ = z;
+        }
+        return maxX < 0 ? -1 : minX | minZ << 8 | maxX << 16 | maxZ << 24;
+    }
+
+    private ColumnMask() {}
+}
@@ -0,0 +1,61 @@
+package com.dexmap.render;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serialized form of a sampled chunk: everything shading reads from a
+ * {@link ColumnBuffer}. Persisted next to each chunk tile, so the tile can
+ * be re-rendered at another resolution or shading style without the
+ * chunk being loaded.
+ */
+public final class ColumnModel {
+    private static final byte VERSION = 1;
+    private static final int BYTES = 1 + 4 + 1 + ColumnBuffer.COLUMNS * (2 * 4 + 1 + 4) + 4 * 16 * 2;
+
+    /** Encodes the buffer's current chunk. */
+    public static byte[] encode(ColumnBuffer columns) {
+        ByteBuffer out = ByteBuffer.allocate(BYTES);
+        out.put(VERSION);
+        out.putInt(columns.seaLevel);
+        out.put((byte) columns.edgeMask);
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            out.putShort((short) columns.surfaceY[i]);
+            out.putShort((short) columns.terrainY[i]);
+            out.putShort((short) columns.oceanFloorY[i]);
+            out.putShort((short) columns.reliefY[i]);
+            out.put((byte) columns.flags[i]);
+            out.putInt(columns.baseColor[i]);
+        }
+        for (int k = 0; k < columns.edgeRelief.length; k++) {
+            out.putShort((short) columns.edgeRelief[k]);
+        }
+        return out.array();
+    }
+
+    /** Loads a model into {@code columns}. Returns false if it is from an unknown version or truncated. */
+    public static boolean decode(byte[] model, ColumnBuffer columns) {
+        if (model.length != BYTES || model[0] != VERSION) return false;
+        try {
+            ByteBuffer in = ByteBuffer.wrap(model, 1, model.length - 1);
+            columns.seaLevel = in.getInt();
+            columns.edgeMask = in.get();
+            for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+                columns.surfaceY[i] = in.getShort();
+                columns.terrainY[i] = in.getShort();
+                columns.oceanFloorY[i] = in.getShort();
+                columns.reliefY[i] = in.getShort();
+                columns.flags[i] = in.get();
+                columns.baseColor[i] = in.getInt();
+            }
+            for (int k = 0; k < columns.edgeRelief.length; k++) {
+                columns.edgeRelief[k] = in.getShort();
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    private ColumnModel() {}
+}
@@ -0,0 +1,148 @@
+package com.dexmap.render;
+
+import java.util.Arrays;
+import net.minecraft.client.texture.NativeImage;
+
+/**
+ * Palette-indexed in-heap copy of a chunk tile, kept so an evicted texture
+ * can be rebuilt without sampling or disk I/O.
+ *
+ * Tiles are drawn one flat block per column, and some blocks get a
+ * three-way diagonal brightness pattern (see
+ * {@code MinecraftStyleRenderer.drawBlock}). So the tile is stored as
+ * one color per column, or three when any column uses the pattern. The
+ * colors are indices into a per-tile palette, packed at 4, 8 or 16 bits.
+ * A typical tile takes 1-3 KiB instead of 16 KiB.
+ *
+ * Immutable, so it can be built on a worker and read on the render thread.
+ */
+public final class CompactTile {
+    // Brightness pattern period of drawBlock
+    private static final int PATTERN = 3;
+    private static final int OVERHEAD_BYTES = 64;
+
+    private final int size;
+    private final int samples; // colors per column: 1 or PATTERN
+    private final int bits;
+    private final int[] palette;
+    private final byte[] indices;
+
+    private CompactTile(int size, int samples, int bits, int[] palette, byte[] indices) {
+        this.size = size;
+        this.samples = samples;
+        this.bits = bits;
+        this.palette = palette;
+        this.indices = indices;
+    }
+
+    /**
+     * Encodes a square row-major ABGR tile. Returns null if a block isn't a
+     * flat color or the diagonal pattern, which only happens for images
+     * that didn't come from {@link MinecraftStyleRenderer}.
+     */
+    public static CompactTile encode(int[] abgr, int size) {
+        int blockPx = size / 16;
+        if (blockPx == 0 || blockPx * 16 != size) return null;
+
+        int[] colors = new int[ColumnBuffer.COLUMNS * PATTERN];
+        boolean patterned = false;
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            int x0 = (i & 15) * blockPx;
+            int y0 = (i >> 4) * blockPx;
+            int seen = 0;
+            for (int pz = 0; pz < blockPx; pz++) {
+                int row = (y0 + pz) * size + x0;
+                for (int px = 0; px < blockPx; px++) {
+                    int k = (px + pz) % PATTERN;
+                    int c = abgr[row + px];
+                    if ((seen & (1 << k)) == 0) {
+                        colors[i * PATTERN + k] = c;
+                        seen |= 1 << k;
+                    } else if (colors[i * PATTERN + k] != c) {
+                        return null;
+                    }
+                }
+            }
+            // Tiny blocks don't show every phase; repeat the first
+            for (int k = 1; k < PATTERN; k++) {
+                if ((seen & (1 << k)) == 0) colors[i * PATTERN + k] = colors[i * PATTERN];
+                else if (colors[i * PATTERN + k] != colors[i * PATTERN]) patterned = true;
+            }
+        }
+
+        int samples = patterned ? PATTERN : 1;
+        int n = ColumnBuffer.COLUMNS * samples;
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = patterned ? colors[i] : colors[i * PATTERN];
+        }
+
+        int[] palette = values.clone();
+        Arrays.sort(palette);
+        int distinct = 0;
+        for (int i = 0; i < palette.length; i++) {
+            if (i == 0 || palette[i] != palette[distinct - 1]) palette[distinct++] = palette[i];
+        }
+        palette = Arrays.copyOf(palette, distinct);
+
+        int bits = distinct <= 16 ? 4 : distinct <= 256 ? 8 : 16;
+        byte[] indices = new byte[(n * bits + 7) / 8];
+        for (int i = 0; i < n; i++) {
+            int index = Arrays.binarySearch(palette, values[i]);
+            switch (bits) {
+                case 4 -> indices[i >> 1] |= (byte) (index << ((i & 1) * 4));
+                case 8 -> indices[i] = (byte) index;
+                default -> {
+                    indices[i * 2] = (byte) index;
+                    indices[i * 2 + 1] = (byte) (index >> 8);
+                }
+            }
+        }
+        return new CompactTile(size, samples, bits, palette, indices);
+    }
+
+    private int color(int sample) {
+        int index = switch (bits) {
+            case 4 -> (indices[sample >> 1] >> ((sample & 1) * 4)) & 0xF;
+            case 8 -> indices[sample] & 0xFF;
+            default -> (indices[sample * 2] & 0xFF) | (indices[sample * 2 + 1] & 0xFF) << 8;
+        };
+        return palette[index];
+    }
+
+    /** Rebuilds the full-size tile image. */
+    public NativeImage toImage() {
+        NativeImage img = new NativeImage(size, size, false);
+        int blockPx = size / 16;
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            int x0 = (i & 15) * blockPx;
+            int y0 = (i >> 4) * blockPx;
+            if (samples == 1) {
+                int c = color(i);
+                for (int pz = 0; pz < blockPx; pz++) {
+                    for (int px = 0; px < blockPx; px++) img.setColor(x0 + px, y0 + pz, c);
+                }
+            } else {
+                int c0 = color(i * PATTERN);
+                int c1 = color(i * PATTERN + 1);
+                int c2 = color(i * PATTERN + 2);
+                for (int pz = 0; pz < blockPx; pz++) {
+                    for (int px = 0; px < blockPx; px++) {
+                        int k = (px + pz) % PATTERN;
+                        img.setColor(x0 + px, y0 + pz, k == 0 ? c0 : k == 1 ? c1 : c2);
+                    }
+                }
+            }
+        }
+        return img;
+    }
+
+    /** Approximate heap footprint. */
+    public int getBytes() {
+        return OVERHEAD_BYTES + palette.length * 4 + indices.length;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,330 @@
+package com.dexmap.render;
+
+import com.dexmap.data.ConcurrentLongTileMap;
+import com.dexmap.data.LongTileMap;
+import com.dexmap.data.TileStore;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Quadtree of downsampled tiles for zoomed-out views. A level-L tile has
+ * the same pixel size as a chunk tile but covers 2^L x 2^L chunks; each
+ * level is a 2x2 box-filtered copy of the four tiles below it.
+ *
+ * Updates are incremental: when a chunk tile changes, only the quadrant of
+ * each ancestor on the path to the top is re-filtered. Tiles are persisted
+ * in the {@link TileStore} under their level, so zoomed-out views don't
+ * need the chunk tiles to be loaded. That also makes the in-memory tiles
+ * a cache: {@link #sweep} drops idle ones and keeps the rest under a byte
+ * budget, least recently used first, and they page back in when needed.
+ */
+public class LodPyramid {
+    public static final int MAX_LEVEL = TileStore.MAX_LEVEL;
+
+    // Drop in-memory tiles that haven't been drawn or updated for this long
+    private static final long IDLE_MS = 30_000;
+    // Cap on LOD re-uploads per frame, to avoid hitching while a region is being explored
+    private static final int MAX_UPLOADS_PER_FRAME = 8;
+    // Share of the budget an over-budget sweep trims down to, so it doesn't run every tick
+    private static final double LOW_WATER = 0.875;
+
+    private final TileStore store;
+    private final Executor loader;
+    // Heap budget for resident tile pixels; the sweep trims back to LOW_WATER of it
+    private final long budgetBytes;
+    private final AtomicLong residentBytes = new AtomicLong();
+    // Tile size in pixels; changes with the map resolution, tiles of the old size are dropped
+    private volatile int size;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLongTileMap<LodTile>[] tiles = new ConcurrentLongTileMap[MAX_LEVEL + 1];
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLongTileMap<Boolean>[] loading = new ConcurrentLongTileMap[MAX_LEVEL + 1];
+
+    private int uploadsThisFrame;
+
+    // Sweep state, kept in fields so the per-tick sweep doesn't allocate. Render thread only.
+    private final LongTileMap.Visitor<LodTile> releaseIdle = this::releaseIfIdle;
+    private final LongTileMap.Visitor<LodTile> collect = this::collect;
+    private TileAtlas sweepAtlas;
+    private int sweepLevel;
+    private long sweepNow;
+    private long sweepCutoff;
+    // Candidates for the over-budget trim: age and index, their level and key
+    private long[] sweepOrder = new long[256];
+    private int[] sweepLevels = new int[256];
+    private long[] sweepKeys = new long[256];
+    private LodTile[] sweepTiles = new LodTile[256];
+    private int sweepCount;
+
+    public LodPyramid(TileStore store, Executor loader, int size, long budgetBytes) {
+        this.store = store;
+        this.loader = loader;
+        this.size = size;
+        this.budgetBytes = budgetBytes;
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            tiles[level] = new ConcurrentLongTileMap<>();
+            loading[level] = new ConcurrentLongTileMap<>();
+        }
+    }
+
+    /** Pyramid level whose texels best match the given on-screen chunk size. */
+    public static int levelFor(float chunkPxOnScreen, int tileSize) {
+        int level = 0;
+        float px = chunkPxOnScreen;
+        // Go up while a tile would still be drawn at least 2x smaller than its texture
+        while (level < MAX_LEVEL && px * 2 <= tileSize) {
+            px *= 2;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Propagates a changed chunk tile up the pyramid. Worker threads only:
+     * may block on reading an ancestor back from disk.
+     */
+    public void update(int chunkX, int chunkZ, int[] chunkPixels) {
+        final int size = this.size;
+        // Rendered before a resolution change
+        if (chunkPixels.length != size * size) return;
+        int[] child = chunkPixels;
+        int childX = chunkX, childZ = chunkZ;
+
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            int tx = childX >> 1, tz = childZ >> 1;
+            long key = ChunkPos.toLong(tx, tz);
+            int[] snapshot = null;
+            while (snapshot == null) {
+                LodTile tile = getOrLoad(level, tx, tz, size);
+                if (tile.pixels.length != child.length) return;
+                synchronized (tile) {
+                    // Evicted since the lookup: a reload from the store would miss this quadrant
+                    if (tiles[level].get(key) != tile) continue;
+                    downsampleInto(child, tile.pixels, size, (childX & 1) * (size / 2), (childZ & 1) * (size / 2));
+                    tile.dirty = true;
+                    tile.lastUsed = System.currentTimeMillis();
+                    snapshot = tile.pixels.clone();
+                    // Queued under the lock, so an evicted tile's last update is already in the store
+                    // and a slower worker can't overwrite a newer snapshot
+                    store.write(level, tx, tz, size, snapshot);
+                }
+            }
+
+            child = snapshot;
+            childX = tx;
+            childZ = tz;
+        }
+    }
+
+    /**
+     * Returns the atlas slot for a tile, uploading it if it changed, or
+     * {@link TileAtlas#NO_SLOT} if it isn't available yet (a background load
+     * is started if it exists on disk). Render thread only.
+     */
+    public int getAtlasSlot(TileAtlas atlas, int level, int x, int z) {
+        long key = ChunkPos.toLong(x, z);
+        LodTile tile = tiles[level].get(key);
+        if (tile == null) {
+            requestLoad(level, x, z);
+            return TileAtlas.NO_SLOT;
+        }
+        tile.lastUsed = System.currentTimeMillis();
+        if (tile.pixels.length != size * size) {
+            // Loaded or updated at the old size while the resolution changed
+            evict(atlas, level, key, tile);
+            return TileAtlas.NO_SLOT;
+        }
+
+        if (tile.dirty && (tile.atlasSlot == TileAtlas.NO_SLOT || uploadsThisFrame < MAX_UPLOADS_PER_FRAME)) {
+            NativeImage img;
+            synchronized (tile) {
+                img = MinecraftStyleRenderer.toImage(tile.pixels, size);
+                tile.dirty = false;
+            }
+            if (tile.atlasSlot == TileAtlas.NO_SLOT) tile.atlasSlot = atlas.allocate();
+            atlas.upload(tile.atlasSlot, img);
+            uploadsThisFrame++;
+        }
+        return tile.atlasSlot;
+    }
+
+    /** Resets the per-frame upload cap. Render thread, once per frame the pyramid is drawn. */
+    public void beginFrame() {
+        uploadsThisFrame = 0;
+    }
+
+    /**
+     * Releases idle tiles, then the least recently used ones while the
+     * resident pixels are over budget. Workers add tiles whether or not
+     * the map is open, so this runs every client tick. Render thread only.
+     */
+    public void sweep(TileAtlas atlas) {
+        sweepAtlas = atlas;
+        sweepNow = System.currentTimeMillis();
+        sweepCutoff = sweepNow - IDLE_MS;
+        for (sweepLevel = 1; sweepLevel <= MAX_LEVEL; sweepLevel++) {
+            tiles[sweepLevel].forEach(releaseIdle);
+        }
+        if (residentBytes.get() > budgetBytes) trim();
+        sweepAtlas = null;
+    }
+
+    private void releaseIfIdle(int x, int z, LodTile tile) {
+        if (tile.lastUsed >= sweepCutoff) return;
+        // Contents are already in the store; it pages back in when needed
+        evict(sweepAtlas, sweepLevel, ChunkPos.toLong(x, z), tile);
+    }
+
+    // Oldest first until under the low-water mark
+    private void trim() {
+        sweepCount = 0;
+        for (sweepLevel = 1; sweepLevel <= MAX_LEVEL; sweepLevel++) {
+            tiles[sweepLevel].forEach(collect);
+        }
+        Arrays.sort(sweepOrder, 0, sweepCount);
+        long target = (long) (budgetBytes * LOW_WATER);
+        for (int i = sweepCount - 1; i >= 0 && residentBytes.get() > target; i--) {
+            int j = (int) sweepOrder[i];
+            LodTile tile = sweepTiles[j];
+            evict(sweepAtlas, sweepLevels[j], sweepKeys[j], tile);
+        }
+        Arrays.fill(sweepTiles, 0, sweepCount, null);
+    }
+
+    private void collect(int x, int z, LodTile tile) {
+        int i = sweepCount++;
+        if (i == sweepOrder.length) {
+            int n = i * 2;
+            sweepOrder = Arrays.copyOf(sweepOrder, n);
+            sweepLevels = Arrays.copyOf(sweepLevels, n);
+            sweepKeys = Arrays.copyOf(sweepKeys, n);
+            sweepTiles = Arrays.copyOf(sweepTiles, n);
+        }
+        long age = Math.max(0, Math.min(sweepNow - tile.lastUsed, Integer.MAX_VALUE));
+        sweepOrder[i] = (age << 32) | i;
+        sweepLevels[i] = sweepLevel;
+        sweepKeys[i] = ChunkPos.toLong(x, z);
+        sweepTiles[i] = tile;
+    }
+
+    // Under the tile's lock, so no update is between its membership check and its store write
+    private void evict(TileAtlas atlas, int level, long key, LodTile tile) {
+        boolean removed;
+        synchronized (tile) {
+            removed = tiles[level].remove(key, tile);
+        }
+        if (removed) release(atlas, tile);
+    }
+
+    // The tile was just removed from its map
+    private void release(TileAtlas atlas, LodTile tile) {
+        residentBytes.addAndGet(-tile.pixels.length * 4L);
+        atlas.free(tile.atlasSlot);
+        tile.atlasSlot = TileAtlas.NO_SLOT;
+    }
+
+    /**
+     * Changes the tile size. Call after {@link #clear}, before tiles of the
+     * new size are rendered; LOD tiles are rebuilt as chunk tiles come in.
+     */
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    /** Forget everything (world or resolution change). Render thread only. */
+    public void clear(TileAtlas atlas) {
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            int l = level;
+            tiles[level].forEach((x, z, tile) -> evict(atlas, l, ChunkPos.toLong(x, z), tile));
+            loading[level].clear();
+        }
+    }
+
+    /** Heap held by resident tile pixels. */
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+
+    public int getResidentCount() {
+        int n = 0;
+        for (int level = 1; level <= MAX_LEVEL; level++) n += tiles[level].size();
+        return n;
+    }
+
+    private LodTile getOrLoad(int level, int x, int z, int size) {
+        long key = ChunkPos.toLong(x, z);
+        LodTile tile = tiles[level].get(key);
+        if (tile != null) return tile;
+
+        // Read outside the map's write lock; if another worker got there first, use its copy
+        int[] stored = store.readTile(level, x, z, size, 0);
+        LodTile loaded = new LodTile(stored != null ? stored : new int[size * size]);
+        LodTile raced = tiles[level].putIfAbsent(key, loaded);
+        if (raced != null) return raced;
+        residentBytes.addAndGet(loaded.pixels.length * 4L);
+        return loaded;
+    }
+
+    private void requestLoad(int level, int x, int z) {
+        long key = ChunkPos.toLong(x, z);
+        if (!store.hasTile(level, x, z) || loading[level].putIfAbsent(key, Boolean.TRUE) != null) return;
+        try {
+            loader.execute(() -> {
+                try {
+                    getOrLoad(level, x, z, size).dirty = true;
+                } finally {
+                    loading[level].remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading[level].remove(key);
+        }
+    }
+
+    /**
+     * 2x2 box filter of a full child tile into one quadrant of the parent.
+     * Averages alpha too, so unexplored (transparent) areas fade at edges.
+     */
+    public static void downsampleInto(int[] child, int[] parent, int size, int offX, int offZ) {
+        int half = size / 2;
+        for (int z = 0; z < half; z++) {
+            int row0 = (z * 2) * size;
+            int row1 = row0 + size;
+            int out = (offZ + z) * size + offX;
+            for (int x = 0; x < half; x++) {
+                int c00 = child[row0 + x * 2];
+                int c01 = child[row0 + x * 2 + 1];
+                int c10 = child[row1 + x * 2];
+                int c11 = child[row1 + x * 2 + 1];
+                parent[out + x] = avg4(c00, c01, c10, c11);
+            }
+        }
+    }
+
+    private static int avg4(int a, int b, int c, int d) {
+        int r = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int sum = ((a >>> shift) & 0xFF) + ((b >>> shift) & 0xFF)
+                    + ((c >>> shift) & 0xFF) + ((d >>> shift) & 0xFF);
+            r |= ((sum + 2) >> 2) << shift;
+        }
+        return r;
+    }
+
+    private static final class LodTile {
+        final int[] pixels;
+        volatile boolean dirty = true;
+        volatile long lastUsed = System.currentTimeMillis();
+        // Render thread only
+        int atlasSlot = TileAtlas.NO_SLOT;
+
+        LodTile(int[] pixels) {
+            this.pixels = pixels;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.dexmap.render;
+
+import com.dexmap.config.DexmapConfig;
+import net.minecraft.util.math.MathHelper;
+
+/**
+ * Resolution and shading settings tiles are rendered with. Rendered tiles
+ * are stored with the {@link #stamp} of their style, so after a change
+ * they are re-shaded from their stored column model instead of being
+ * sampled from the world again.
+ *
+ * With {@code gpuShading}, chunk tiles are uploaded as unshaded
+ * {@link TerrainTexture} data and shaded by {@link TerrainShader} at draw
+ * time; the other settings then only affect stored pixel tiles and LOD.
+ */
+public record MapStyle(
+        int size,
+        float heightExaggeration,
+        boolean microStepShading,
+        boolean contours,
+        int contourStep,
+        float waterDepthStrength,
+        float canopyPatternStrength,
+        boolean gpuShading
+) {
+    public static final MapStyle DEFAULT = new MapStyle(64, 1.25f, true, true, 8, 1.0f, 1.0f, false);
+
+    /** The config's settings, clamped to what the renderer supports. */
+    public static MapStyle from(DexmapConfig config) {
+        // Whole pixels per block
+        int size = MathHelper.clamp(Math.round(config.textureResolution / 16f), 1, 8) * 16;
+        return new MapStyle(
+                size,
+                MathHelper.clamp(config.heightExaggeration, 0f, 4f),
+                config.microStepShading,
+                config.contoursEnabled,
+                Math.max(1, config.contourStep),
+                MathHelper.clamp(config.waterDepthStrength, 0f, 2f),
+                MathHelper.clamp(config.canopyPatternStrength, 0f, 2f),
+                // Falls back to CPU shading until the shader has loaded
+                config.gpuShading && TerrainShader.isAvailable());
+    }
+
+    /** Texture pixels per block. */
+    public int blockPx() {
+        return size / 16;
+    }
+
+    /** Size of a chunk tile in the atlas. */
+    public int textureSize() {
+        return gpuShading ? TerrainTexture.SIZE : size;
+    }
+
+    /** Identifies what the atlas holds for a chunk tile in this style: shaded pixels or terrain data. */
+    public int textureStamp() {
+        return gpuShading ? TerrainTexture.STAMP : stamp();
+    }
+
+    /**
+     * Identifies the look of a rendered tile; persisted with it, so it is
+     * computed explicitly rather than from {@link #hashCode}. Never 0,
+     * which marks tiles of unknown style.
+     */
+    public int stamp() {
+        int h = size;
+        h = h * 31 + Float.floatToIntBits(heightExaggeration);
+        h = h * 31 + (microStepShading ? 1 : 0);
+        h = h * 31 + (contours ? contourStep : 0);
+        h = h * 31 + Float.floatToIntBits(waterDepthStrength);
+        h = h * 31 + Float.floatToIntBits(canopyPatternStrength);
+        return h != 0 ? h : 1;
+    }
+}
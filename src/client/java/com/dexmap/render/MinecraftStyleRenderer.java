@@ -1,119 +1,181 @@
 package com.dexmap.render;
 
 import net.minecraft.client.texture.NativeImage;
-import net.minecraft.client.texture.NativeImageBackedTexture;
 import net.minecraft.client.world.ClientWorld;
 import net.minecraft.util.math.ChunkPos;
 
+/**
+ * Turns sampled columns into tile pixels. Shading is a pure function of a
+ * {@link ColumnBuffer} and a {@link MapStyle}, so a tile can be re-rendered
+ * at another resolution or style from its stored {@link ColumnModel}.
+ */
 public class MinecraftStyleRenderer {
-    // 4 px per block; raise to 8 for ultra detail (costs VRAM/CPU)
-    private static final int CHUNK_TEXTURE_SIZE = 64;
-    private static final int BLOCK_PX = 4;
+    /**
+     * Samples a chunk into {@code columns} and shades it into {@code img}.
+     * Allocates nothing, so steady-state rendering only pays for the output.
+     */
+    public static void rasterizeInto(
+            ChunkPos chunkPos, ClientWorld world, ColumnBuffer columns, BorderRibbons ribbons, MapStyle style,
+            int[] img
+    ) {
+        TerrainSampler.sampleColumns(world, chunkPos, null, ribbons, columns);
+        shadeChunk(chunkPos, columns, style, img);
+    }
 
-    // Shading tuning
-    private static final float HEIGHT_EXAGGERATION = 1.25f;
-    private static final int CONTOUR_STEP = 8;
+    /** {@link #rasterizeInto} over any terrain source, with an explicit biome blend radius. */
+    public static void rasterizeInto(
+            TerrainView view, ChunkPos chunkPos, int blendRadius, ColumnBuffer columns, BorderRibbons ribbons,
+            MapStyle style, int[] img
+    ) {
+        TerrainSampler.sampleColumns(view, chunkPos, null, ribbons, blendRadius, columns);
+        shadeChunk(chunkPos, columns, style, img);
+    }
+
+    /**
+     * Shades already sampled (or loaded) columns into {@code img}, which
+     * holds {@code style.size()}² pixels; the pixel half of
+     * {@link #rasterizeInto}.
+     */
+    public static void shadeChunk(ChunkPos chunkPos, ColumnBuffer columns, MapStyle style, int[] img) {
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            shadeColumn(chunkPos, columns, style, img, i);
+        }
+    }
 
-    public static NativeImageBackedTexture createMinecraftStyleTexture(
-            ChunkPos chunkPos, ClientWorld world
+    /**
+     * Re-renders the block columns set in {@code changed} into an existing
+     * tile image, plus the one-column border whose hillshade depends on
+     * them. Columns in {@code seams} only need re-shading against new
+     * neighbour heights, so they don't grow the area. The other columns of
+     * {@code columns} must hold the tile's current model. Returns the
+     * re-shaded area as {@link ColumnMask#bounds}.
+     */
+    public static int reshadeColumns(
+            ChunkPos chunkPos, ClientWorld world, ColumnBuffer columns, BorderRibbons ribbons, MapStyle style,
+            int[] img, long[] changed, long[] seams
     ) {
-        NativeImage img = new NativeImage(CHUNK_TEXTURE_SIZE, CHUNK_TEXTURE_SIZE, false);
-
-        int[][] shadeH = new int[16][16];
-        TerrainSampler.SurfaceInfo[][] info = new TerrainSampler.SurfaceInfo[16][16];
-
-        for (int bx = 0; bx < 16; bx++) {
-            for (int bz = 0; bz < 16; bz++) {
-                int wx = chunkPos.getStartX() + bx;
-                int wz = chunkPos.getStartZ() + bz;
-                TerrainSampler.SurfaceInfo s = TerrainSampler.sample(world, wx, wz);
-                info[bx][bz] = s;
-                shadeH[bx][bz] = TerrainSampler.reliefHeightForShading(s);
-            }
+        int bounds = reshadeColumns(columns.worldTerrain.bind(world), chunkPos,
+                TerrainSampler.getBiomeBlendRadiusSafe(), columns, ribbons, style, img, changed, seams);
+        columns.worldTerrain.release();
+        return bounds;
+    }
+
+    /** {@link #reshadeColumns} over any terrain source; {@code seams} may be null. */
+    public static int reshadeColumns(
+            TerrainView view, ChunkPos chunkPos, int blendRadius, ColumnBuffer columns, BorderRibbons ribbons,
+            MapStyle style, int[] img, long[] changed, long[] seams
+    ) {
+        long[] shade = columns.shadeMask;
+        long[] sample = columns.sampleMask;
+        ColumnMask.dilate(changed, shade);
+        if (seams != null) ColumnMask.or(shade, seams);
+        // Shading a column reads its four neighbours' heights
+        ColumnMask.dilate(shade, sample);
+
+        TerrainSampler.sampleColumns(view, chunkPos, sample, ribbons, blendRadius, columns);
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            if (ColumnMask.get(shade, i)) shadeColumn(chunkPos, columns, style, img, i);
         }
+        return ColumnMask.bounds(shade);
+    }
 
-        for (int bx = 0; bx < 16; bx++) {
-            for (int bz = 0; bz < 16; bz++) {
-                int wx = chunkPos.getStartX() + bx;
-                int wz = chunkPos.getStartZ() + bz;
-                TerrainSampler.SurfaceInfo s = info[bx][bz];
-
-                // Neighbor heights for hillshade normal
-                int hL = getH(shadeH, bx - 1, bz);
-                int hR = getH(shadeH, bx + 1, bz);
-                int hN = getH(shadeH, bx, bz - 1);
-                int hS = getH(shadeH, bx, bz + 1);
-
-                float dx = (hR - hL) * 0.5f;
-                float dz = (hS - hN) * 0.5f;
-                float nx = -dx, ny = 2.0f, nz = -dz;
-                float inv =
-                        1.0f / (float) Math.max(Math.sqrt(nx * nx + ny * ny + nz * nz), 1e-5);
-                nx *= inv;
-                ny *= inv;
-                nz *= inv;
-
-                int rgb = s.baseColor;
-
-                // Water depth darkening
-                if (s.isWater) {
-                    int depth = TerrainSampler.waterDepth(world, s);
-                    rgb = TerrainSampler.applyDepthDarkening(rgb, depth);
-                }
-
-                // Hillshade
-                rgb = TerrainSampler.applyHillshade(rgb, nx, ny, nz, HEIGHT_EXAGGERATION);
-
-                // Micro step shading (consistent per-block cue)
-                int dyNorth = shadeH[bx][bz] - hN;
-                int dyWest = shadeH[bx][bz] - hL;
-                rgb = TerrainSampler.applyMicroStepShading(rgb, dyNorth, dyWest);
-
-                // Contours
-                rgb =
-                        TerrainSampler.applyContour(
-                                rgb, shadeH[bx][bz], world.getSeaLevel(), CONTOUR_STEP
-                        );
-
-                // Tree canopy subtle pattern; no pattern on grass/ground (removes dotted look)
-                rgb = TerrainSampler.applyCanopyPattern(rgb, wx, wz, s.isTreeCanopy);
-
-                drawBlock(img, bx, bz, rgb, s);
-            }
+    private static void shadeColumn(ChunkPos chunkPos, ColumnBuffer columns, MapStyle style, int[] img, int i) {
+        int bx = i & 15;
+        int bz = i >> 4;
+        int wx = chunkPos.getStartX() + bx;
+        int wz = chunkPos.getStartZ() + bz;
+        int[] shadeH = columns.reliefY;
+
+        // Neighbor heights for hillshade normal
+        int hL = columns.reliefAt(bx - 1, bz);
+        int hR = columns.reliefAt(bx + 1, bz);
+        int hN = columns.reliefAt(bx, bz - 1);
+        int hS = columns.reliefAt(bx, bz + 1);
+
+        float dx = (hR - hL) * 0.5f;
+        float dz = (hS - hN) * 0.5f;
+        float nx = -dx, ny = 2.0f, nz = -dz;
+        float inv =
+                1.0f / (float) Math.max(Math.sqrt(nx * nx + ny * ny + nz * nz), 1e-5);
+        nx *= inv;
+        ny *= inv;
+        nz *= inv;
+
+        int rgb = columns.baseColor[i];
+        boolean isWater = columns.has(i, ColumnBuffer.WATER);
+        boolean isTreeCanopy = columns.has(i, ColumnBuffer.TREE_CANOPY);
+
+        // Water depth darkening
+        if (isWater) {
+            rgb = TerrainSampler.applyDepthDarkening(rgb, columns.waterDepth(i), style.waterDepthStrength());
         }
 
-        return new NativeImageBackedTexture(img);
+        // Hillshade
+        rgb = TerrainSampler.applyHillshade(rgb, nx, ny, nz, style.heightExaggeration());
+
+        // Micro step shading (consistent per-block cue)
+        if (style.microStepShading()) {
+            int dyNorth = shadeH[i] - hN;
+            int dyWest = shadeH[i] - hL;
+            rgb = TerrainSampler.applyMicroStepShading(rgb, dyNorth, dyWest);
+        }
+
+        // Contours
+        if (style.contours()) {
+            rgb = TerrainSampler.applyContour(rgb, shadeH[i], columns.seaLevel, style.contourStep());
+        }
+
+        // Tree canopy subtle pattern; no pattern on grass/ground (removes dotted look)
+        rgb = TerrainSampler.applyCanopyPattern(rgb, wx, wz, isTreeCanopy, style.canopyPatternStrength());
+
+        drawBlock(img, style.size(), bx, bz, rgb, isTreeCanopy || isWater);
     }
 
-    private static int getH(int[][] h, int x, int z) {
-        x = Math.max(0, Math.min(15, x));
-        z = Math.max(0, Math.min(15, z));
-        return h[x][z];
+    public static NativeImage toImage(int[] abgr, int size) {
+        NativeImage img = new NativeImage(size, size, false);
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                img.setColor(x, z, abgr[z * size + x]);
+            }
+        }
+        return img;
+    }
+
+    /** Copies a w x h sub-rectangle of a size x size pixel array into a new image. */
+    public static NativeImage toImage(int[] abgr, int size, int x0, int y0, int w, int h) {
+        NativeImage img = new NativeImage(w, h, false);
+        for (int z = 0; z < h; z++) {
+            int row = (y0 + z) * size + x0;
+            for (int x = 0; x < w; x++) {
+                img.setColor(x, z, abgr[row + x]);
+            }
+        }
+        return img;
     }
 
     private static void drawBlock(
-            NativeImage img, int bx, int bz, int rgb, TerrainSampler.SurfaceInfo s
+            int[] img, int size, int bx, int bz, int rgb, boolean subtle
     ) {
         // Convert to ABGR once
         int r = (rgb >> 16) & 0xFF;
         int g = (rgb >> 8) & 0xFF;
         int b = rgb & 0xFF;
 
-        int sx = bx * BLOCK_PX;
-        int sz = bz * BLOCK_PX;
+        int blockPx = size / 16;
+        int sx = bx * blockPx;
+        int sz = bz * blockPx;
 
         // No per-pixel noise on grass/ground to avoid dotted “lime”; keep very
         // slight variation for canopy/water to avoid banding.
-        boolean subtle = s.isTreeCanopy || s.isWater;
 
-        for (int px = 0; px < BLOCK_PX; px++) {
-            for (int pz = 0; pz < BLOCK_PX; pz++) {
+        for (int px = 0; px < blockPx; px++) {
+            for (int pz = 0; pz < blockPx; pz++) {
                 float v = subtle ? 1.0f + (((px + pz) % 3) - 1) * 0.012f : 1.0f;
                 int rr = Math.max(0, Math.min(255, (int) (r * v)));
                 int gg = Math.max(0, Math.min(255, (int) (g * v)));
                 int bb = Math.max(0, Math.min(255, (int) (b * v)));
                 int abgr = 0xFF000000 | (bb << 16) | (gg << 8) | rr;
-                img.setColor(sx + px, sz + pz, abgr);
+                img[(sz + pz) * size + sx + px] = abgr;
             }
         }
     }
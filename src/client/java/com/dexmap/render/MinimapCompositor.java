@@ -0,0 +1,243 @@
+package com.dexmap.render;
+
+import com.dexmap.data.ChunkData;
+import com.dexmap.data.MapData;
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.systems.VertexSorter;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gl.SimpleFramebuffer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.BufferRenderer;
+import net.minecraft.client.render.GameRenderer;
+import net.minecraft.client.render.Tessellator;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.VertexFormats;
+import net.minecraft.util.math.ChunkPos;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fStack;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * The minimap's chunks composited into one offscreen texture used as a
+ * toroidal ring buffer: chunk (x, z) always lives in cell (x mod N, z mod N).
+ * Moving by a chunk redraws only the row or column that scrolled into view,
+ * and the HUD draws the whole map as a single quad with wrapping texture
+ * coordinates. Render thread only.
+ */
+public class MinimapCompositor {
+    private static final int EMPTY_COLOR = 0xFF000000;
+
+    // Cell states
+    private static final byte DONE = 0;     // shows its chunk's current tile
+    private static final byte STALE = 1;    // shows whatever was there before; must be filled
+    private static final byte WAITING = 2;  // filled, waiting for the tile to be uploaded
+
+    private final int radius;
+    private final int cells;
+    private final int cellPx;
+    private final TileBatch batch;
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f identity = new Matrix4f();
+
+    // Chunk key each cell currently belongs to, and its state
+    private final long[] cellChunk;
+    private final byte[] state;
+    // Cells with work for the next update; pending[] guards against duplicates
+    private final boolean[] pending;
+    private final int[] pendingList;
+    private int pendingCount;
+
+    private SimpleFramebuffer target;
+    private boolean valid;
+    private int centerX, centerZ;
+    // View row re-checked this frame, to pick up tiles that appeared or were invalidated
+    private int sweepRow;
+
+    /** {@code cellSize} is the map resolution: pixels per chunk in the buffer. */
+    public MinimapCompositor(TileAtlas atlas, int cellSize, int radius) {
+        this.radius = radius;
+        this.cells = radius * 2 + 1;
+        this.cellPx = cellSize;
+        this.batch = new TileBatch(atlas);
+        int n = cells * cells;
+        this.cellChunk = new long[n];
+        this.state = new byte[n];
+        this.pending = new boolean[n];
+        this.pendingList = new int[n];
+    }
+
+    /**
+     * Brings the ring buffer up to date for a view centred on the given
+     * chunk: draws the newly exposed edge, tiles that were uploaded since
+     * the last call, and re-checks one row of the view.
+     */
+    public void update(MapData map, int playerChunkX, int playerChunkZ) {
+        if (target == null) createTarget();
+        recenter(playerChunkX, playerChunkZ);
+        sweep(map);
+        if (pendingCount > 0) drawPending(map);
+    }
+
+    /** Draws the composited map as one quad at (x, y), {@code size} GUI pixels square. */
+    public void draw(DrawContext ctx, int x, int y, int size) {
+        if (target == null) return;
+        // Flush anything DrawContext still has buffered so layering is preserved
+        ctx.draw();
+
+        float u0 = Math.floorMod(centerX - radius, cells) / (float) cells;
+        float v0 = Math.floorMod(centerZ - radius, cells) / (float) cells;
+        Matrix4f m = ctx.getMatrices().peek().getPositionMatrix();
+
+        RenderSystem.setShader(GameRenderer::getPositionTexProgram);
+        RenderSystem.setShaderTexture(0, target.getColorAttachment());
+        BufferBuilder bb = Tessellator.getInstance()
+                .begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_TEXTURE);
+        // The texture repeats, so a window starting mid-ring wraps around
+        bb.vertex(m, x, y, 0).texture(u0, v0);
+        bb.vertex(m, x, y + size, 0).texture(u0, v0 + 1);
+        bb.vertex(m, x + size, y + size, 0).texture(u0 + 1, v0 + 1);
+        bb.vertex(m, x + size, y, 0).texture(u0 + 1, v0);
+        BufferRenderer.drawWithGlobalProgram(bb.end());
+    }
+
+    /** A tile's texture changed; redraw its cell if it is in view. */
+    public void onTileUploaded(int chunkX, int chunkZ) {
+        if (!valid || Math.abs(chunkX - centerX) > radius || Math.abs(chunkZ - centerZ) > radius) return;
+        int i = cellIndex(chunkX, chunkZ);
+        if (cellChunk[i] == ChunkPos.toLong(chunkX, chunkZ)) markPending(i);
+    }
+
+    /** Pixels per cell, the map resolution it was created for. */
+    public int getCellSize() {
+        return cellPx;
+    }
+
+    /** Forgets the buffer's contents, e.g. after a world change. */
+    public void invalidate() {
+        valid = false;
+    }
+
+    public void close() {
+        if (target != null) {
+            target.delete();
+            target = null;
+        }
+        valid = false;
+    }
+
+    private void createTarget() {
+        int size = cells * cellPx;
+        target = new SimpleFramebuffer(size, size, false, false);
+        target.setTexFilter(GL11.GL_NEAREST);
+        RenderSystem.bindTexture(target.getColorAttachment());
+        GlStateManager._texParameter(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+        GlStateManager._texParameter(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+        RenderSystem.bindTexture(0);
+        // y-up, so framebuffer pixel (x, y) is texture coordinate (x, y) / size
+        projection.setOrtho(0, size, 0, size, -1000, 1000);
+        valid = false;
+    }
+
+    private void recenter(int x, int z) {
+        if (valid && x == centerX && z == centerZ) return;
+        int dx = x - centerX;
+        int dz = z - centerZ;
+        int minX = x - radius, maxX = x + radius;
+        int minZ = z - radius, maxZ = z + radius;
+        if (!valid || Math.abs(dx) >= cells || Math.abs(dz) >= cells) {
+            markStale(minX, minZ, maxX, maxZ);
+        } else {
+            // Columns that scrolled in, full height
+            if (dx > 0) markStale(maxX - dx + 1, minZ, maxX, maxZ);
+            else if (dx < 0) markStale(minX, minZ, minX - dx - 1, maxZ);
+            // Rows that scrolled in, minus the corner the columns already covered
+            int rowMinX = dx < 0 ? minX - dx : minX;
+            int rowMaxX = dx > 0 ? maxX - dx : maxX;
+            if (dz > 0) markStale(rowMinX, maxZ - dz + 1, rowMaxX, maxZ);
+            else if (dz < 0) markStale(rowMinX, minZ, rowMaxX, minZ - dz - 1);
+        }
+        centerX = x;
+        centerZ = z;
+        valid = true;
+    }
+
+    private void markStale(int minX, int minZ, int maxX, int maxZ) {
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int x = minX; x <= maxX; x++) {
+                int i = cellIndex(x, z);
+                cellChunk[i] = ChunkPos.toLong(x, z);
+                state[i] = STALE;
+                markPending(i);
+            }
+        }
+    }
+
+    private void sweep(MapData map) {
+        int z = centerZ - radius + sweepRow;
+        sweepRow = (sweepRow + 1) % cells;
+        for (int x = centerX - radius; x <= centerX + radius; x++) {
+            ChunkData data = map.getChunk(x, z);
+            if (data == null) continue;
+            // Keeps visible tiles referenced and requests a raster if one went dirty
+            int slot = data.getAtlasSlot();
+            int i = cellIndex(x, z);
+            if (slot != TileAtlas.NO_SLOT && state[i] == WAITING) markPending(i);
+        }
+    }
+
+    private void markPending(int i) {
+        if (pending[i]) return;
+        pending[i] = true;
+        pendingList[pendingCount++] = i;
+    }
+
+    private void drawPending(MapData map) {
+        target.beginWrite(true);
+        RenderSystem.backupProjectionMatrix();
+        RenderSystem.setProjectionMatrix(projection, VertexSorter.BY_Z);
+        Matrix4fStack modelView = RenderSystem.getModelViewStack();
+        modelView.pushMatrix();
+        modelView.identity();
+        RenderSystem.applyModelViewMatrix();
+        RenderSystem.disableBlend();
+
+        for (int k = 0; k < pendingCount; k++) {
+            int i = pendingList[k];
+            pending[i] = false;
+            long key = cellChunk[i];
+            int x0 = (i % cells) * cellPx;
+            int y0 = (i / cells) * cellPx;
+
+            ChunkData data = map.getChunk(ChunkPos.getPackedX(key), ChunkPos.getPackedZ(key));
+            int slot = data != null ? data.getAtlasSlot() : TileAtlas.NO_SLOT;
+            if (slot != TileAtlas.NO_SLOT) {
+                batch.add(slot, x0, y0, x0 + cellPx, y0 + cellPx);
+                state[i] = DONE;
+            } else if (state[i] == STALE) {
+                fill(x0, y0, data != null ? TileRasterizer.PLACEHOLDER_COLOR : EMPTY_COLOR);
+                state[i] = WAITING;
+            }
+        }
+        pendingCount = 0;
+        batch.draw(identity);
+
+        modelView.popMatrix();
+        RenderSystem.applyModelViewMatrix();
+        RenderSystem.restoreProjectionMatrix();
+        MinecraftClient.getInstance().getFramebuffer().beginWrite(true);
+    }
+
+    private void fill(int x0, int y0, int argb) {
+        RenderSystem.enableScissor(x0, y0, cellPx, cellPx);
+        RenderSystem.clearColor(
+                ((argb >> 16) & 0xFF) / 255f, ((argb >> 8) & 0xFF) / 255f, (argb & 0xFF) / 255f, 1f);
+        RenderSystem.clear(GL11.GL_COLOR_BUFFER_BIT, false);
+        RenderSystem.disableScissor();
+    }
+
+    private int cellIndex(int chunkX, int chunkZ) {
+        return Math.floorMod(chunkZ, cells) * cells + Math.floorMod(chunkX, cells);
+    }
+}
@@ -0,0 +1,232 @@
+package com.dexmap.render;
+
+import com.dexmap.Dexmap;
+import com.dexmap.data.LongTileMap;
+import com.dexmap.metrics.MapMetrics;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Worker pool for raster jobs that runs the job nearest to a focus point
+ * first: the player, and the world map's view centre while it is open.
+ * Jobs are keyed by chunk, so a newer job for the same chunk replaces the
+ * queued one and {@link #cancel} drops the job of an unloaded chunk before
+ * it costs a worker anything. When a focus moves by a chunk or more the
+ * queue is re-ordered the next time a worker takes a job.
+ */
+final class RasterScheduler implements Executor {
+    static final int FOCUS_PLAYER = 0;
+    static final int FOCUS_VIEW = 1;
+
+    // Unkeyed jobs (LOD loads) go ahead of every chunk job; the key is far outside any world border
+    private static final long NO_KEY = Long.MIN_VALUE;
+    private static final float URGENT = -1f;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // Guarded by lock
+    private PriorityQueue<Job> queue = new PriorityQueue<>();
+    private final LongTileMap<Job> queued = new LongTileMap<>();
+    private long seq;
+    private boolean shutdown;
+
+    // Focus points in chunk coordinates, written by the render thread
+    private final float[] focusX = new float[2];
+    private final float[] focusZ = new float[2];
+    private final boolean[] focusActive = new boolean[2];
+    // Where each focus was when the queue was last ordered
+    private final float[] orderedX = new float[2];
+    private final float[] orderedZ = new float[2];
+    private volatile boolean reorder;
+
+    private final Thread[] threads;
+
+    RasterScheduler(int threads) {
+        this.threads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(this::workerLoop, "Dexmap Raster #" + (i + 1));
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            this.threads[i] = t;
+            t.start();
+        }
+    }
+
+    /** Runs {@code task} ahead of all chunk jobs; used for LOD loads. */
+    @Override
+    public void execute(Runnable task) {
+        enqueue(new Job(NO_KEY, task, null));
+    }
+
+    /**
+     * Queues a job for chunk (chunkX, chunkZ), replacing one still queued
+     * for the same chunk. {@code onCancel} runs on the calling thread if
+     * this job is replaced or cancelled before it starts.
+     */
+    void submit(int chunkX, int chunkZ, Runnable task, Runnable onCancel) {
+        enqueue(new Job(ChunkPos.toLong(chunkX, chunkZ), task, onCancel));
+    }
+
+    private void enqueue(Job job) {
+        Job replaced = null;
+        lock.lock();
+        try {
+            if (shutdown) throw new RejectedExecutionException("Raster workers shut down");
+            if (job.key != NO_KEY) {
+                replaced = queued.put(job.key, job);
+                if (replaced != null) replaced.cancelled = true;
+            }
+            job.seq = seq++;
+            job.priority = job.key == NO_KEY ? URGENT : priority(job.key);
+            queue.add(job);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (replaced != null) cancelled(replaced);
+    }
+
+    /** Drops the queued job for chunk (chunkX, chunkZ), if any. A job that already started runs to the end. */
+    void cancel(int chunkX, int chunkZ) {
+        Job job;
+        lock.lock();
+        try {
+            job = queued.remove(ChunkPos.toLong(chunkX, chunkZ));
+            if (job != null) job.cancelled = true;
+        } finally {
+            lock.unlock();
+        }
+        if (job != null) cancelled(job);
+    }
+
+    private static void cancelled(Job job) {
+        MapMetrics.CANCELLED.increment();
+        if (job.onCancel != null) job.onCancel.run();
+    }
+
+    /** Moves a focus point; render thread only. Queued jobs are re-ordered once it has moved a chunk. */
+    void setFocus(int focus, float chunkX, float chunkZ) {
+        focusX[focus] = chunkX;
+        focusZ[focus] = chunkZ;
+        if (!focusActive[focus]) {
+            focusActive[focus] = true;
+            reorder = true;
+            return;
+        }
+        float dx = chunkX - orderedX[focus];
+        float dz = chunkZ - orderedZ[focus];
+        if (dx * dx + dz * dz >= 1f) reorder = true;
+    }
+
+    void clearFocus(int focus) {
+        if (!focusActive[focus]) return;
+        focusActive[focus] = false;
+        reorder = true;
+    }
+
+    /** Squared chunk distance to the nearest active focus. Caller holds the lock. */
+    private float priority(long key) {
+        float x = ChunkPos.getPackedX(key) + 0.5f;
+        float z = ChunkPos.getPackedZ(key) + 0.5f;
+        float best = Float.MAX_VALUE;
+        for (int i = 0; i < focusX.length; i++) {
+            if (!focusActive[i]) continue;
+            float dx = x - focusX[i];
+            float dz = z - focusZ[i];
+            best = Math.min(best, dx * dx + dz * dz);
+        }
+        return best;
+    }
+
+    /** Re-scores every live job against the current focus and drops cancelled ones. Caller holds the lock. */
+    private void reorder() {
+        reorder = false;
+        for (int i = 0; i < focusX.length; i++) {
+            orderedX[i] = focusX[i];
+            orderedZ[i] = focusZ[i];
+        }
+        ArrayList<Job> live = new ArrayList<>(queue.size());
+        for (Job job : queue) {
+            if (job.cancelled) continue;
+            if (job.key != NO_KEY) job.priority = priority(job.key);
+            live.add(job);
+        }
+        // Heapifies in linear time
+        queue = new PriorityQueue<>(live);
+    }
+
+    private Job take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (shutdown) return null;
+                if (reorder) reorder();
+                Job job = queue.poll();
+                if (job == null) {
+                    notEmpty.await();
+                    continue;
+                }
+                if (job.cancelled) continue;
+                if (job.key != NO_KEY) queued.remove(job.key, job);
+                return job;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workerLoop() {
+        try {
+            Job job;
+            while ((job = take()) != null) {
+                try {
+                    job.task.run();
+                } catch (Throwable t) {
+                    Dexmap.LOGGER.error("Raster job failed", t);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Shutting down
+        }
+    }
+
+    void shutdownNow() {
+        lock.lock();
+        try {
+            shutdown = true;
+            queue.clear();
+            queued.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread t : threads) t.interrupt();
+    }
+
+    // Nearest first; equal distances in submission order
+    private static final class Job implements Comparable<Job> {
+        final long key;
+        final Runnable task;
+        final Runnable onCancel;
+        float priority;
+        long seq;
+        // Guarded by the scheduler's lock
+        boolean cancelled;
+
+        Job(long key, Runnable task, Runnable onCancel) {
+            this.key = key;
+            this.task = task;
+            this.onCancel = onCancel;
+        }
+
+        @Override
+        public int compareTo(Job o) {
+            return priority != o.priority ? Float.compare(priority, o.priority) : Long.compare(seq, o.seq);
+        }
+    }
+}
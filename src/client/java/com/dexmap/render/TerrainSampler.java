@@ -1,19 +1,20 @@
 package com.dexmap.render;
 
+import com.dexmap.metrics.MapMetrics;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
-import net.minecraft.block.MapColor;
 import net.minecraft.client.MinecraftClient;
-import net.minecraft.client.color.world.BiomeColors;
 import net.minecraft.client.world.ClientWorld;
 import net.minecraft.registry.tag.BlockTags;
 import net.minecraft.registry.tag.FluidTags;
-import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.Heightmap;
 
 public final class TerrainSampler {
     private static final MinecraftClient MC = MinecraftClient.getInstance();
+    // Scratch for the single-column sample(); chunk rendering uses ColumnBuffer.get()
+    private static final ThreadLocal<ColumnBuffer> SINGLE = ThreadLocal.withInitial(ColumnBuffer::new);
 
     public static final class SurfaceInfo {
         public final int x;
@@ -60,19 +61,133 @@ public final class TerrainSampler {
     }
 
     public static SurfaceInfo sample(ClientWorld world, int x, int z) {
-        // Heights
-        int worldSurfaceTop = world.getTopY(Heightmap.Type.WORLD_SURFACE, x, z);
-        int surfaceY = Math.max(world.getBottomY(), worldSurfaceTop - 1);
+        ColumnBuffer buf = SINGLE.get();
+        SurfaceInfo info = sample(buf.worldTerrain.bind(world), x, z, getBiomeBlendRadiusSafe());
+        buf.worldTerrain.release();
+        return info;
+    }
+
+    /** {@link #sample} over any terrain source, with an explicit biome blend radius. */
+    public static SurfaceInfo sample(TerrainView view, int x, int z, int blendRadius) {
+        // Single-column path: per-column biome average, no chunk blend
+        ColumnBuffer buf = SINGLE.get();
+        sampleColumn(view, x, z, null, blendRadius, buf, 0);
+        int f = buf.flags[0];
+        return new SurfaceInfo(
+                x,
+                z,
+                buf.surfaceY[0],
+                buf.terrainY[0],
+                buf.oceanFloorY[0],
+                (f & ColumnBuffer.WATER) != 0,
+                (f & ColumnBuffer.LEAVES) != 0,
+                (f & ColumnBuffer.TREE_CANOPY) != 0,
+                (f & ColumnBuffer.GRASS_BLOCK) != 0,
+                (f & ColumnBuffer.SNOW) != 0,
+                buf.baseColor[0]
+        );
+    }
+
+    /**
+     * Samples all 256 columns of a chunk into {@code out}. Allocation-free
+     * once the buffer exists; biome tints come from one blend per chunk.
+     *
+     * Heights and blocks are read straight from the chunk's heightmaps and
+     * sections rather than resolving the chunk through the world for every
+     * lookup. The relief heights of the adjacent columns in the four
+     * neighbouring chunks are read once, so shading continues across edges.
+     */
+    public static void sampleChunk(ClientWorld world, ChunkPos chunk, ColumnBuffer out) {
+        sampleColumns(world, chunk, null, null, out);
+    }
+
+    /**
+     * Like {@link #sampleChunk}, but only samples the columns set in
+     * {@code columns} (a {@link ColumnMask}; null for all). Other entries of
+     * {@code out} are left as they were; neighbour edges are only read when
+     * a sampled column lies on them, from {@code ribbons} where present.
+     */
+    public static void sampleColumns(
+            ClientWorld world, ChunkPos chunk, long[] columns, BorderRibbons ribbons, ColumnBuffer out
+    ) {
+        long start = System.nanoTime();
+        sampleColumns(out.worldTerrain.bind(world), chunk, columns, ribbons, getBiomeBlendRadiusSafe(), out);
+        out.worldTerrain.release();
+        if (columns == null) MapMetrics.SAMPLE.recordSince(start);
+    }
+
+    /** {@link #sampleColumns} over any terrain source, with an explicit biome blend radius. */
+    public static void sampleColumns(
+            TerrainView view, ChunkPos chunk, long[] columns, BorderRibbons ribbons, int blendRadius,
+            ColumnBuffer out
+    ) {
+        out.blend.reset(view, chunk, blendRadius);
+        int startX = chunk.getStartX();
+        int startZ = chunk.getStartZ();
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            if (columns != null && !ColumnMask.get(columns, i)) continue;
+            sampleColumn(view, startX + (i & 15), startZ + (i >> 4), out.blend, blendRadius, out, i);
+        }
+        out.blend.release();
+        out.seaLevel = view.getSeaLevel();
+
+        // A partial sample keeps the edges it doesn't touch, e.g. from a loaded model
+        if (columns == null) out.edgeMask = 0;
+        sampleEdge(view, chunk.x, chunk.z - 1, 0, 15, 1, 0, ColumnBuffer.EDGE_NORTH, columns, ribbons, out);
+        sampleEdge(view, chunk.x, chunk.z + 1, 0, 0, 1, 0, ColumnBuffer.EDGE_SOUTH, columns, ribbons, out);
+        sampleEdge(view, chunk.x - 1, chunk.z, 15, 0, 0, 1, ColumnBuffer.EDGE_WEST, columns, ribbons, out);
+        sampleEdge(view, chunk.x + 1, chunk.z, 0, 0, 0, 1, ColumnBuffer.EDGE_EAST, columns, ribbons, out);
+    }
+
+    // Reads the 16 relief heights of one neighbour's edge row/column facing this chunk
+    private static void sampleEdge(
+            TerrainView view, int cx, int cz, int bx, int bz, int stepX, int stepZ, int edge,
+            long[] columns, BorderRibbons ribbons, ColumnBuffer out
+    ) {
+        if (columns != null && !ColumnMask.touchesEdge(columns, edge)) return;
+        int offset = ColumnBuffer.edgeOffset(edge);
+        out.edgeMask &= ~edge;
+
+        // Already rasterized neighbours publish their border; no need to touch the world
+        int[] ribbon = ribbons != null ? ribbons.get(cx, cz) : null;
+        if (ribbon != null) {
+            BorderRibbons.copySide(ribbon, BorderRibbons.opposite(edge), out.edgeRelief, offset);
+            out.edgeMask |= edge;
+            return;
+        }
+
+        if (!view.isChunkLoaded(cx, cz)) return;
+        int bottomY = view.getBottomY();
+        for (int k = 0; k < 16; k++) {
+            int x = (cx << 4) + bx + k * stepX;
+            int z = (cz << 4) + bz + k * stepZ;
+            int surfaceY = Math.max(bottomY, view.getTopY(Heightmap.Type.WORLD_SURFACE, x, z) - 1);
+            BlockState surface = view.getBlockState(x, surfaceY, z);
+            boolean isWater =
+                    (!surface.isAir() && surface.getFluidState().isIn(FluidTags.WATER))
+                            || surface.isOf(Blocks.WATER);
+            Heightmap.Type type = isWater ? Heightmap.Type.OCEAN_FLOOR : Heightmap.Type.MOTION_BLOCKING_NO_LEAVES;
+            out.edgeRelief[offset + k] = Math.max(bottomY, view.getTopY(type, x, z) - 1);
+        }
+        out.edgeMask |= edge;
+    }
+
+    private static void sampleColumn(
+            TerrainView view, int x, int z, BiomeBlend blend, int blendRadius, ColumnBuffer out, int i
+    ) {
+        // Heights; the top block of each heightmap
+        int bottomY = view.getBottomY();
+        int worldSurfaceTop = view.getTopY(Heightmap.Type.WORLD_SURFACE, x, z);
+        int surfaceY = Math.max(bottomY, worldSurfaceTop - 1);
 
         int motionTop =
-                world.getTopY(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, x, z);
-        int terrainY = Math.max(world.getBottomY(), motionTop - 1);
+                view.getTopY(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, x, z);
+        int terrainY = Math.max(bottomY, motionTop - 1);
 
-        int oceanTop = world.getTopY(Heightmap.Type.OCEAN_FLOOR, x, z);
-        int oceanFloorY = Math.max(world.getBottomY(), oceanTop - 1);
+        int oceanTop = view.getTopY(Heightmap.Type.OCEAN_FLOOR, x, z);
+        int oceanFloorY = Math.max(bottomY, oceanTop - 1);
 
-        BlockPos surfacePos = new BlockPos(x, surfaceY, z);
-        BlockState surface = world.getBlockState(surfacePos);
+        BlockState surface = view.getBlockState(x, surfaceY, z);
 
         boolean surfaceIsAir = surface.isAir();
         boolean isWater =
@@ -88,43 +203,32 @@ public final class TerrainSampler {
 
         // Robust visible block fallback (handles overhangs/odd columns)
         BlockState visibleState = surface;
-        BlockPos visiblePos = surfacePos;
+        int visibleY = surfaceY;
         if (surfaceIsAir || visibleIsUnrenderable(visibleState)) {
             // Walk down until we find something renderable, but not too deep
-            int minY = Math.max(world.getBottomY(), surfaceY - 16);
+            int minY = Math.max(bottomY, surfaceY - 16);
             for (int y = surfaceY - 1; y >= minY; y--) {
-                BlockPos p = new BlockPos(x, y, z);
-                BlockState s = world.getBlockState(p);
+                BlockState s = view.getBlockState(x, y, z);
                 if (!s.isAir() && !visibleIsUnrenderable(s)) {
                     visibleState = s;
-                    visiblePos = p;
+                    visibleY = y;
                     break;
                 }
             }
         }
 
         // Biome-blended color choice
-        int radius = getBiomeBlendRadiusSafe();
+        if (blend != null && !blend.covers(x, z)) blend = null;
         int color;
 
         if (isWater) {
-            color = blendedWaterColor(world, x, z, radius);
+            color = blend != null ? blend.water(x, z) : averageColor(x, z, blendRadius, view::getWaterColor);
         } else if (isLeaves) {
-            color = blendedFoliageColor(world, x, z, radius);
+            color = blend != null ? blend.foliage(x, z) : averageColor(x, z, blendRadius, view::getFoliageColor);
         } else if (isGrassBlock) {
-            color = blendedGrassColor(world, x, z, radius);
+            color = blend != null ? blend.grass(x, z) : averageColor(x, z, blendRadius, view::getGrassColor);
         } else {
-            // Try block color provider first
-            color = -1;
-            try {
-                if (MC != null && MC.getBlockColors() != null) {
-                    color = MC.getBlockColors().getColor(visibleState, world, visiblePos, 0);
-                }
-            } catch (Exception ignored) {}
-            if (color == -1 || color == 0xFFFFFF) {
-                MapColor mc = visibleState.getMapColor(world, visiblePos);
-                color = (mc != MapColor.CLEAR) ? mc.getRenderColor(2) : 0x888888;
-            }
+            color = view.getBlockColor(visibleState, x, visibleY, z);
         }
 
         // Slight separation tweaks (conservative; won’t cause lime)
@@ -134,19 +238,16 @@ public final class TerrainSampler {
             color = adjustSV(color, 1.03f, 1.02f);
         }
 
-        return new SurfaceInfo(
-                x,
-                z,
-                surfaceY,
-                terrainY,
-                oceanFloorY,
-                isWater,
-                isLeaves,
-                isTreeCanopy,
-                isGrassBlock,
-                isSnow,
-                color
-        );
+        out.surfaceY[i] = surfaceY;
+        out.terrainY[i] = terrainY;
+        out.oceanFloorY[i] = oceanFloorY;
+        out.reliefY[i] = isWater ? oceanFloorY : terrainY;
+        out.flags[i] = (isWater ? ColumnBuffer.WATER : 0)
+                | (isLeaves ? ColumnBuffer.LEAVES : 0)
+                | (isTreeCanopy ? ColumnBuffer.TREE_CANOPY : 0)
+                | (isGrassBlock ? ColumnBuffer.GRASS_BLOCK : 0)
+                | (isSnow ? ColumnBuffer.SNOW : 0);
+        out.baseColor[i] = color;
     }
 
     public static int waterDepth(ClientWorld world, SurfaceInfo s) {
@@ -159,18 +260,6 @@ public final class TerrainSampler {
 
     // ---------- Biome blending ----------
 
-    private static int blendedGrassColor(ClientWorld w, int x, int z, int r) {
-        return averageColor(x, z, r, (xi, zi) -> BiomeColors.getGrassColor(w, new BlockPos(xi, 0, zi)));
-    }
-
-    private static int blendedFoliageColor(ClientWorld w, int x, int z, int r) {
-        return averageColor(x, z, r, (xi, zi) -> BiomeColors.getFoliageColor(w, new BlockPos(xi, 0, zi)));
-    }
-
-    private static int blendedWaterColor(ClientWorld w, int x, int z, int r) {
-        return averageColor(x, z, r, (xi, zi) -> BiomeColors.getWaterColor(w, new BlockPos(xi, 0, zi)));
-    }
-
     @FunctionalInterface
     private interface ColorAt {
         int get(int x, int z);
@@ -195,7 +284,7 @@ public final class TerrainSampler {
         return (r << 16) | (g << 8) | b;
     }
 
-    private static int getBiomeBlendRadiusSafe() {
+    static int getBiomeBlendRadiusSafe() {
         try {
             // Works on recent Fabric mappings; fall back if signature differs
             return MC.options.getBiomeBlendRadius().getValue();
@@ -206,10 +295,11 @@ public final class TerrainSampler {
 
     // ---------- Shading helpers used by renderer ----------
 
-    public static int applyDepthDarkening(int rgb, int depth) {
-        if (depth <= 0) return rgb;
+    public static int applyDepthDarkening(int rgb, int depth, float strength) {
+        if (depth <= 0 || strength <= 0) return rgb;
         float f = MathHelper.clamp(1.0f - (depth * 0.022f), 0.55f, 0.96f);
-        return mul(rgb, f);
+        // strength 1 is the base curve; 0 disables, 2 doubles the darkening
+        return mul(rgb, Math.max(0.1f, 1.0f - (1.0f - f) * strength));
     }
 
     public static int applyHillshade(int rgb, float nx, float ny, float nz, float exaggeration) {
@@ -245,13 +335,17 @@ public final class TerrainSampler {
         return rgb;
     }
 
-    public static int applyCanopyPattern(int rgb, int worldX, int worldZ, boolean canopy) {
-        if (!canopy) return rgb;
-        int h = hash(worldX * 734287 + worldZ * 912931);
-        float v = 1.0f + (((h & 0x7) - 3) * 0.015f); // very subtle +/- ~4.5%
+    public static int applyCanopyPattern(int rgb, int worldX, int worldZ, boolean canopy, float strength) {
+        if (!canopy || strength <= 0) return rgb;
+        float v = 1.0f + ((canopyNoise(worldX, worldZ) - 3) * 0.015f * strength); // very subtle +/- ~4.5% at strength 1
         return mul(rgb, v);
     }
 
+    /** Per-column canopy variation, 0..7. */
+    static int canopyNoise(int worldX, int worldZ) {
+        return hash(worldX * 734287 + worldZ * 912931) & 0x7;
+    }
+
     // ---------- internals ----------
 
     private static boolean visibleIsUnrenderable(BlockState s) {
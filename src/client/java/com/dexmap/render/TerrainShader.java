@@ -0,0 +1,57 @@
+package com.dexmap.render;
+
+import com.dexmap.Dexmap;
+import net.fabricmc.fabric.api.client.rendering.v1.CoreShaderRegistrationCallback;
+import net.minecraft.client.gl.GlUniform;
+import net.minecraft.client.gl.ShaderProgram;
+import net.minecraft.client.render.VertexFormats;
+import net.minecraft.util.Identifier;
+
+/**
+ * The terrain_shade core shader, which shades {@link TerrainTexture} data
+ * tiles at draw time. Loaded with the game's shaders on every resource
+ * reload; until then (or if it fails to compile) the GPU path is
+ * unavailable and tiles are shaded on the CPU.
+ */
+public final class TerrainShader {
+    public static final Identifier ID = Identifier.of("dexmap", "terrain_shade");
+
+    private static volatile ShaderProgram program;
+
+    public static void register() {
+        CoreShaderRegistrationCallback.EVENT.register(context -> {
+            program = null;
+            context.register(ID, VertexFormats.POSITION_TEXTURE, loaded -> {
+                program = loaded;
+                Dexmap.LOGGER.info("Dexmap terrain shader loaded");
+            });
+        });
+    }
+
+    public static boolean isAvailable() {
+        return program != null;
+    }
+
+    public static ShaderProgram getProgram() {
+        return program;
+    }
+
+    /** Loads the style's shading settings into the shader's uniforms. Render thread only. */
+    public static void applyStyle(MapStyle style) {
+        ShaderProgram p = program;
+        if (p == null) return;
+        set(p, "HeightExaggeration", style.heightExaggeration());
+        set(p, "MicroStepShading", style.microStepShading() ? 1f : 0f);
+        set(p, "ContourStep", style.contours() ? style.contourStep() : 0f);
+        set(p, "WaterDepthStrength", style.waterDepthStrength());
+        set(p, "CanopyPatternStrength", style.canopyPatternStrength());
+        set(p, "BlockPx", style.blockPx());
+    }
+
+    private static void set(ShaderProgram p, String name, float value) {
+        GlUniform uniform = p.getUniform(name);
+        if (uniform != null) uniform.set(value);
+    }
+
+    private TerrainShader() {}
+}
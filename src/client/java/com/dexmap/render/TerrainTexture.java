@@ -0,0 +1,78 @@
+package com.dexmap.render;
+
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Unshaded per-chunk terrain data for the GPU shading path: everything the
+ * terrain_shade core shader needs to shade a chunk at draw time, in one
+ * {@value #SIZE}x{@value #SIZE} atlas tile. Shading settings and the map
+ * resolution then only change shader uniforms, and a tile upload is a
+ * quarter of a 64 px pixel tile.
+ *
+ * Texel layout (RGBA8), block (x, z) in 0..15:
+ * <ul>
+ * <li>(x, z): base colour in RGB; alpha holds the water and canopy flags in
+ *     bits 0-1 and the water depth, capped at 63, in bits 2-7.</li>
+ * <li>(16 + x, z): relief height relative to sea level as a signed 16-bit
+ *     value in R (low) and G (high); B holds the canopy noise (0..7).</li>
+ * <li>Rows 16-19: relief heights of the neighbouring chunks' adjacent
+ *     columns, north, south, west and east, encoded like the height texels.
+ *     Sides without a neighbour repeat this chunk's edge.</li>
+ * </ul>
+ */
+public final class TerrainTexture {
+    public static final int SIZE = 32;
+    // Rows in use; the rest of the tile stays empty
+    public static final int ROWS = 20;
+
+    // Stands in for the MapStyle stamp: data tiles don't depend on the style
+    public static final int STAMP = 0x7E770001;
+
+    private static final int MAX_DEPTH = 63;
+
+    /** Encodes a sampled chunk into a {@link #SIZE} x {@link #ROWS} image. */
+    public static NativeImage toImage(ChunkPos pos, ColumnBuffer columns) {
+        NativeImage img = new NativeImage(SIZE, ROWS, false);
+        int sea = columns.seaLevel;
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            int x = i & 15;
+            int z = i >> 4;
+            int flags = 0;
+            if (columns.has(i, ColumnBuffer.WATER)) flags |= 1;
+            if (columns.has(i, ColumnBuffer.TREE_CANOPY)) flags |= 2;
+            flags |= Math.min(columns.waterDepth(i), MAX_DEPTH) << 2;
+            img.setColor(x, z, abgr(columns.baseColor[i], flags));
+
+            int noise = TerrainSampler.canopyNoise(pos.getStartX() + x, pos.getStartZ() + z);
+            img.setColor(16 + x, z, height(columns.reliefY[i] - sea, noise));
+        }
+        for (int k = 0; k < 16; k++) {
+            img.setColor(k, 16, height(columns.reliefAt(k, -1) - sea, 0));
+            img.setColor(k, 17, height(columns.reliefAt(k, 16) - sea, 0));
+            img.setColor(k, 18, height(columns.reliefAt(-1, k) - sea, 0));
+            img.setColor(k, 19, height(columns.reliefAt(16, k) - sea, 0));
+        }
+        return img;
+    }
+
+    /** Texture coordinate extent of a tile's block area, for a page of {@code pageSize} texels. */
+    public static float uvExtent(int pageSize) {
+        return 16f / pageSize;
+    }
+
+    // RGB colour plus alpha, as NativeImage's ABGR
+    private static int abgr(int rgb, int alpha) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        return (alpha << 24) | (b << 16) | (g << 8) | r;
+    }
+
+    private static int height(int relative, int noise) {
+        // R = low byte, G = high byte
+        return 0xFF000000 | (noise << 16) | (relative & 0xFFFF);
+    }
+
+    private TerrainTexture() {}
+}
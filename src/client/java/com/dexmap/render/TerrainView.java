@@ -0,0 +1,37 @@
+package com.dexmap.render;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.world.Heightmap;
+
+/**
+ * Everything {@link TerrainSampler} reads from a world: heights, block
+ * states, biome tints and block colors. In game this is a
+ * {@link WorldTerrain} over the client world; benchmarks and tools supply
+ * synthetic terrain so sampling and shading run without a game client.
+ *
+ * Coordinates are world block coordinates. Implementations need not be
+ * thread-safe; each raster worker uses its own.
+ */
+public interface TerrainView {
+    int getBottomY();
+
+    int getSeaLevel();
+
+    boolean isChunkLoaded(int chunkX, int chunkZ);
+
+    /** One above the highest block matched by the heightmap, like {@code World.getTopY}. */
+    int getTopY(Heightmap.Type type, int x, int z);
+
+    /** Air outside the build height or in unloaded chunks. */
+    BlockState getBlockState(int x, int y, int z);
+
+    // Biome tints, RGB
+    int getGrassColor(int x, int z);
+
+    int getFoliageColor(int x, int z);
+
+    int getWaterColor(int x, int z);
+
+    /** Map color of a block as drawn at the given position, RGB. */
+    int getBlockColor(BlockState state, int x, int y, int z);
+}
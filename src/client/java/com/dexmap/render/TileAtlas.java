@@ -0,0 +1,197 @@
+package com.dexmap.render;
+
+import com.mojang.blaze3d.platform.TextureUtil;
+import com.mojang.blaze3d.systems.RenderSystem;
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.client.texture.AbstractTexture;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.resource.ResourceManager;
+
+/**
+ * Packs chunk tiles into shared texture pages so a whole visible area can
+ * be drawn with one bind per page instead of one texture per chunk.
+ *
+ * A slot handle is {@code page << 16 | slot}; -1 means "no slot". All
+ * methods must be called on the render thread.
+ *
+ * The pages hold either shaded pixel tiles or {@link TerrainTexture} data
+ * tiles, which {@link TileBatch} draws through {@link TerrainShader}.
+ */
+public class TileAtlas {
+    public static final int PAGE_SIZE = 1024;
+    public static final int NO_SLOT = -1;
+
+    // Keep at most this many completely empty pages around for reuse
+    private static final int SPARE_PAGES = 1;
+
+    private int tileSize;
+    private int tilesPerRow;
+    private int slotsPerPage;
+    private boolean terrainData;
+
+    // Indexed by page number; destroyed pages leave a null so handles stay stable
+    private final List<Page> pages = new ArrayList<>();
+    private int residentTiles;
+
+    public TileAtlas(int tileSize) {
+        this(tileSize, false);
+    }
+
+    public TileAtlas(int tileSize, boolean terrainData) {
+        this.tileSize = tileSize;
+        this.tilesPerRow = PAGE_SIZE / tileSize;
+        this.slotsPerPage = tilesPerRow * tilesPerRow;
+        this.terrainData = terrainData;
+    }
+
+    /**
+     * Switches to another tile size or content. Every slot must have been
+     * freed; the pages are dropped and new ones laid out for the new size.
+     */
+    public void setTileSize(int tileSize, boolean terrainData) {
+        close();
+        this.tileSize = tileSize;
+        this.tilesPerRow = PAGE_SIZE / tileSize;
+        this.slotsPerPage = tilesPerRow * tilesPerRow;
+        this.terrainData = terrainData;
+    }
+
+    /** True if the tiles are unshaded terrain data rather than pixels. */
+    public boolean isTerrainData() {
+        return terrainData;
+    }
+
+    public static int pageOf(int handle) {
+        return handle >>> 16;
+    }
+
+    public static int slotOf(int handle) {
+        return handle & 0xFFFF;
+    }
+
+    public int allocate() {
+        RenderSystem.assertOnRenderThread();
+        // Fill the fullest page first so live tiles stay packed into few pages
+        Page best = null;
+        for (Page p : pages) {
+            if (p != null && p.freeCount > 0 && (best == null || p.freeCount < best.freeCount)) {
+                best = p;
+            }
+        }
+        if (best == null) best = newPage();
+
+        int slot = best.freeSlots[--best.freeCount];
+        residentTiles++;
+        return (best.index << 16) | slot;
+    }
+
+    public void free(int handle) {
+        RenderSystem.assertOnRenderThread();
+        if (handle == NO_SLOT) return;
+        Page page = pages.get(pageOf(handle));
+        if (page == null) return;
+        page.freeSlots[page.freeCount++] = slotOf(handle);
+        residentTiles--;
+
+        if (page.freeCount == slotsPerPage && countEmptyPages() > SPARE_PAGES) {
+            page.close();
+            pages.set(page.index, null);
+        }
+    }
+
+    /** Uploads a tile image into its slot and closes the image. */
+    public void upload(int handle, NativeImage tile) {
+        upload(handle, tile, 0, 0);
+    }
+
+    /**
+     * Uploads part of a tile: {@code image} lands at (offX, offY) within the
+     * slot. Closes the image.
+     */
+    public void upload(int handle, NativeImage image, int offX, int offY) {
+        RenderSystem.assertOnRenderThread();
+        Page page = pages.get(pageOf(handle));
+        int slot = slotOf(handle);
+        page.bindTexture();
+        image.upload(0, (slot % tilesPerRow) * tileSize + offX, (slot / tilesPerRow) * tileSize + offY, true);
+    }
+
+    public int getPageGlId(int page) {
+        return pages.get(page).getGlId();
+    }
+
+    public float u0(int handle) {
+        return (slotOf(handle) % tilesPerRow) * tileSize / (float) PAGE_SIZE;
+    }
+
+    public float v0(int handle) {
+        return (slotOf(handle) / tilesPerRow) * tileSize / (float) PAGE_SIZE;
+    }
+
+    public float uvSize() {
+        return tileSize / (float) PAGE_SIZE;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getPageCount() {
+        int n = 0;
+        for (Page p : pages) if (p != null) n++;
+        return n;
+    }
+
+    /** Texture memory held by the live pages, RGBA8. */
+    public long getNativeBytes() {
+        return (long) getPageCount() * PAGE_SIZE * PAGE_SIZE * 4;
+    }
+
+    public int getResidentTiles() {
+        return residentTiles;
+    }
+
+    public void close() {
+        for (Page p : pages) if (p != null) p.close();
+        pages.clear();
+        residentTiles = 0;
+    }
+
+    private int countEmptyPages() {
+        int n = 0;
+        for (Page p : pages) if (p != null && p.freeCount == slotsPerPage) n++;
+        return n;
+    }
+
+    private Page newPage() {
+        int index = pages.indexOf(null);
+        if (index < 0) {
+            index = pages.size();
+            pages.add(null);
+        }
+        Page page = new Page(index, slotsPerPage);
+        pages.set(index, page);
+        return page;
+    }
+
+    private static final class Page extends AbstractTexture {
+        final int index;
+        final int[] freeSlots;
+        int freeCount;
+
+        Page(int index, int slots) {
+            this.index = index;
+            this.freeSlots = new int[slots];
+            // Hand out low slots first
+            for (int i = 0; i < slots; i++) freeSlots[i] = slots - 1 - i;
+            this.freeCount = slots;
+
+            TextureUtil.prepareImage(getGlId(), PAGE_SIZE, PAGE_SIZE);
+            setFilter(false, false);
+        }
+
+        @Override
+        public void load(ResourceManager manager) {}
+    }
+}
@@ -0,0 +1,103 @@
+package com.dexmap.render;
+
+import com.dexmap.DexmapClient;
+import com.mojang.blaze3d.systems.RenderSystem;
+import java.util.Arrays;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.BufferRenderer;
+import net.minecraft.client.render.GameRenderer;
+import net.minecraft.client.render.Tessellator;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.VertexFormats;
+import org.joml.Matrix4f;
+
+/**
+ * Collects atlas tile quads for a frame and draws them grouped by atlas
+ * page: one texture bind and one quad stream per page. Reused across
+ * frames, so it doesn't allocate once its arrays have grown.
+ *
+ * Terrain data tiles are drawn through {@link TerrainShader} with the
+ * current map style; pixel tiles with the plain textured-quad shader.
+ */
+public class TileBatch {
+    private final TileAtlas atlas;
+
+    private int[] handles = new int[256];
+    private float[] rects = new float[256 * 4];
+    private long[] order = new long[256];
+    private int count;
+
+    public TileBatch(TileAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    public void add(int handle, float x0, float y0, float x1, float y1) {
+        if (count == handles.length) {
+            handles = Arrays.copyOf(handles, count * 2);
+            rects = Arrays.copyOf(rects, count * 8);
+            order = Arrays.copyOf(order, count * 2);
+        }
+        handles[count] = handle;
+        int r = count * 4;
+        rects[r] = x0;
+        rects[r + 1] = y0;
+        rects[r + 2] = x1;
+        rects[r + 3] = y1;
+        count++;
+    }
+
+    public void draw(DrawContext ctx) {
+        if (count == 0) return;
+
+        // Flush anything DrawContext still has buffered so layering is preserved
+        ctx.draw();
+        draw(ctx.getMatrices().peek().getPositionMatrix());
+    }
+
+    /** Draws with the given position matrix, e.g. into an offscreen target. */
+    public void draw(Matrix4f m) {
+        if (count == 0) return;
+
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) TileAtlas.pageOf(handles[i]) << 32) | i;
+        }
+        Arrays.sort(order, 0, count);
+
+        float uv;
+        if (atlas.isTerrainData() && TerrainShader.isAvailable()) {
+            TerrainShader.applyStyle(DexmapClient.getInstance().getTileRasterizer().getStyle());
+            RenderSystem.setShader(TerrainShader::getProgram);
+            // Only the block area of a data tile is drawn
+            uv = TerrainTexture.uvExtent(TileAtlas.PAGE_SIZE);
+        } else {
+            RenderSystem.setShader(GameRenderer::getPositionTexProgram);
+            uv = atlas.uvSize();
+        }
+
+        int i = 0;
+        while (i < count) {
+            int page = (int) (order[i] >>> 32);
+            RenderSystem.setShaderTexture(0, atlas.getPageGlId(page));
+            BufferBuilder bb = Tessellator.getInstance()
+                    .begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_TEXTURE);
+
+            for (; i < count && (int) (order[i] >>> 32) == page; i++) {
+                int q = (int) order[i];
+                int h = handles[q];
+                float u0 = atlas.u0(h), v0 = atlas.v0(h);
+                int r = q * 4;
+                bb.vertex(m, rects[r], rects[r + 1], 0).texture(u0, v0);
+                bb.vertex(m, rects[r], rects[r + 3], 0).texture(u0, v0 + uv);
+                bb.vertex(m, rects[r + 2], rects[r + 3], 0).texture(u0 + uv, v0 + uv);
+                bb.vertex(m, rects[r + 2], rects[r + 1], 0).texture(u0 + uv, v0);
+            }
+            BufferRenderer.drawWithGlobalProgram(bb.end());
+        }
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+}
@@ -0,0 +1,563 @@
+package com.dexmap.render;
+
+import com.dexmap.Dexmap;
+import com.dexmap.data.ChunkData;
+import com.dexmap.data.TileStore;
+import com.dexmap.metrics.MapEvents;
+import com.dexmap.metrics.MapMetrics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Background raster stage. Sampling and pixel generation run on worker
+ * threads, nearest to the player or the map view first; the render thread
+ * only uploads finished images.
+ */
+public class TileRasterizer {
+    // Shown for chunks that are known but still being rasterized
+    public static final int PLACEHOLDER_COLOR = 0xFF1E1E1E;
+    // Reads of the live world before a tile is given up as failed
+    private static final int SAMPLE_ATTEMPTS = 3;
+
+    private final RasterScheduler workers;
+    // Off: jobs run on the submitting thread, for debugging
+    private final boolean async;
+    private final TileStore store;
+    private final LodPyramid lodPyramid;
+    private final Queue<RasterResult> finished = new ConcurrentLinkedQueue<>();
+    private final BorderRibbons ribbons = new BorderRibbons();
+    private final Queue<SeamFix> seamFixes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private UploadListener uploadListener;
+    // Read by workers when a job starts; tiles rendered with another style are re-shaded when drawn
+    private volatile MapStyle style;
+    private volatile int styleStamp;
+
+    // Finished images waiting for upload, drained nearest-first under a per-frame time budget.
+    // Render thread only.
+    private final ArrayList<RasterResult> ready = new ArrayList<>();
+    private long[] uploadOrder = new long[64];
+    private final long uploadBudgetNanos;
+    private float focusX, focusZ;
+    private int lastUploadCount;
+
+    public TileRasterizer(
+            int threads, boolean async, TileStore store, MapStyle style, long uploadBudgetMicros, long lodCacheBytes) {
+        this.store = store;
+        this.async = async;
+        this.style = style;
+        this.styleStamp = style.textureStamp();
+        this.uploadBudgetNanos = Math.max(0, uploadBudgetMicros) * 1000L;
+        int n = threads > 0
+                ? threads
+                : Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        this.workers = new RasterScheduler(n);
+        this.lodPyramid = new LodPyramid(store, workers, style.size(), lodCacheBytes);
+        Dexmap.LOGGER.info("Dexmap raster workers: {}", n);
+    }
+
+    /**
+     * Queue a chunk for rasterization. Loaded chunks are sampled from the
+     * world (and the result persisted with its column model); unloaded or
+     * evicted-but-unchanged ones are paged in from the tile store, or
+     * re-shaded from their stored model if they were rendered in another
+     * style. The tile's current generation is captured so results that
+     * were invalidated in the meantime are dropped, and a job still queued
+     * for the same chunk is replaced.
+     */
+    public boolean submit(ChunkData tile, ClientWorld world) {
+        final ChunkPos pos = tile.getPosition();
+        final int generation = tile.getGeneration();
+        return schedule(pos, () -> {
+            try {
+                MapEvents.Raster event = new MapEvents.Raster();
+                event.begin();
+                long start = System.nanoTime();
+                final MapStyle style = this.style;
+                final int size = style.size();
+                final int stamp = style.stamp();
+                boolean loaded = world.getChunkManager().isChunkLoaded(pos.x, pos.z);
+                ColumnBuffer columns = ColumnBuffer.get();
+                int[] pixels = null;
+                boolean haveModel = false;
+                String kind = "page-in";
+                if (style.gpuShading() && (!loaded || tile.isPersisted())) {
+                    // Terrain data comes straight from the stored model; nothing to shade
+                    haveModel = loadModel(pos, columns);
+                    if (haveModel) {
+                        MapMetrics.PAGE_INS.increment();
+                        tile.markPersisted();
+                    }
+                } else if (!loaded || tile.isPersisted()) {
+                    // Evicted tiles that are still current come back from disk, not the world
+                    pixels = store.readTile(pos.x, pos.z, size, stamp);
+                    boolean restyled = false;
+                    if (pixels == null) {
+                        // Rendered in another style: re-shade the stored model instead
+                        pixels = restyle(tile, generation, style);
+                        restyled = pixels != null;
+                    }
+                    if (pixels == null && !loaded) {
+                        // Stored before column models existed; keeps its look until the chunk loads
+                        pixels = store.readTile(pos.x, pos.z, size, 0);
+                    }
+                    if (restyled) {
+                        kind = "restyle";
+                        MapMetrics.RASTER.recordSince(start);
+                    } else if (pixels != null) {
+                        MapMetrics.PAGE_INS.increment();
+                    }
+                    if (pixels != null) tile.markPersisted();
+                }
+                if (pixels == null && !haveModel && loaded) {
+                    // Pixels are still shaded here: they feed the tile store and the LOD pyramid
+                    int[] shaded = pixels = new int[size * size];
+                    sampleWorld(tile, generation, () -> {
+                        MinecraftStyleRenderer.rasterizeInto(pos, world, columns, ribbons, style, shaded);
+                        return ColumnMask.FULL_BOUNDS;
+                    });
+                    if (!tile.markSampled(generation)) return;
+                    tile.setSeamEdges(columns.edgeMask, true);
+                    publishBorder(pos, columns, null);
+                    store.writeColumns(pos, ColumnModel.encode(columns));
+                    store.write(pos, size, stamp, pixels);
+                    tile.markPersisted();
+                    lodPyramid.update(pos.x, pos.z, pixels);
+                    haveModel = true;
+                    kind = "full";
+                    MapMetrics.RASTER.recordSince(start);
+                }
+                if (style.gpuShading() ? !haveModel : pixels == null) {
+                    // With GPU shading, tiles stored without a model can't be shown until their chunk loads
+                    tile.rasterFailed(generation);
+                    return;
+                }
+                // Invalidated or released while reading: skip the encode
+                if (!tile.markSampled(generation)) return;
+                NativeImage img;
+                CompactTile compact;
+                if (style.gpuShading()) {
+                    img = TerrainTexture.toImage(pos, columns);
+                    compact = null;
+                } else {
+                    img = MinecraftStyleRenderer.toImage(pixels, size);
+                    compact = CompactTile.encode(pixels, size);
+                }
+                if (!tile.markRastered(generation)) {
+                    img.close();
+                    return;
+                }
+                finished.add(new RasterResult(tile, generation, style.textureStamp(), img, false, 0, 0, compact));
+                if (event.shouldCommit()) {
+                    event.chunkX = pos.x;
+                    event.chunkZ = pos.z;
+                    event.kind = kind;
+                    event.bytes = img.getWidth() * img.getHeight() * 4L;
+                    event.commit();
+                }
+            } catch (Exception e) {
+                Dexmap.LOGGER.error("Failed to rasterize chunk {}: {}", pos, e.getMessage());
+                tile.rasterFailed(generation);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }, () -> tile.rasterCancelled(generation, false));
+    }
+
+    /**
+     * Re-shades a tile from its stored column model in the given style,
+     * without touching the world. The result is persisted and propagated
+     * to the LOD pyramid. Returns null if the tile has no model (or was
+     * invalidated meanwhile). Worker threads only.
+     */
+    private int[] restyle(ChunkData tile, int generation, MapStyle style) {
+        ChunkPos pos = tile.getPosition();
+        ColumnBuffer columns = ColumnBuffer.get();
+        if (!loadModel(pos, columns)) return null;
+        int[] pixels = new int[style.size() * style.size()];
+        MinecraftStyleRenderer.shadeChunk(pos, columns, style, pixels);
+        if (!tile.markSampled(generation)) return null;
+        store.write(pos, style.size(), style.stamp(), pixels);
+        lodPyramid.update(pos.x, pos.z, pixels);
+        return pixels;
+    }
+
+    private boolean loadModel(ChunkPos pos, ColumnBuffer columns) {
+        byte[] model = store.readColumns(pos.x, pos.z);
+        return model != null && ColumnModel.decode(model, columns);
+    }
+
+    /**
+     * Queue a re-render of the given block columns of a tile whose texture
+     * and stored copy are current. The stored model is updated from the
+     * world, the stored pixels are patched, and both are persisted and
+     * propagated to the LOD pyramid; only the changed sub-rectangle is
+     * uploaded. Falls back to a full raster if the stored copy is missing
+     * or in another style.
+     */
+    public boolean submitPartial(ChunkData tile, ClientWorld world, long[] changedColumns, long[] seamColumns) {
+        final ChunkPos pos = tile.getPosition();
+        final int generation = tile.getGeneration();
+        return schedule(pos, () -> {
+            try {
+                MapEvents.Raster event = new MapEvents.Raster();
+                event.begin();
+                long start = System.nanoTime();
+                final MapStyle style = this.style;
+                final int size = style.size();
+                final int stamp = style.stamp();
+                if (!world.getChunkManager().isChunkLoaded(pos.x, pos.z)) {
+                    tile.rasterFailed(generation);
+                    return;
+                }
+                // The unchanged columns come from the stored model, so only the changed ones are sampled
+                ColumnBuffer columns = ColumnBuffer.get();
+                boolean haveModel = loadModel(pos, columns);
+                int[] stored = haveModel ? store.readTile(pos.x, pos.z, size, stamp) : null;
+                final int[] pixels = stored != null ? stored : new int[size * size];
+                int bounds;
+                long[] sampled;
+                if (stored != null) {
+                    bounds = sampleWorld(tile, generation, () -> MinecraftStyleRenderer.reshadeColumns(
+                            pos, world, columns, ribbons, style, pixels, changedColumns, seamColumns));
+                    sampled = columns.sampleMask;
+                } else if (haveModel) {
+                    // Stored pixels are in another style (GPU shading doesn't restyle them):
+                    // sample only the changed columns, then shade the whole tile
+                    bounds = sampleWorld(tile, generation, () -> {
+                        MinecraftStyleRenderer.reshadeColumns(
+                                pos, world, columns, ribbons, style, pixels, changedColumns, seamColumns);
+                        MinecraftStyleRenderer.shadeChunk(pos, columns, style, pixels);
+                        return ColumnMask.FULL_BOUNDS;
+                    });
+                    sampled = columns.sampleMask;
+                } else {
+                    bounds = sampleWorld(tile, generation, () -> {
+                        MinecraftStyleRenderer.rasterizeInto(pos, world, columns, ribbons, style, pixels);
+                        return ColumnMask.FULL_BOUNDS;
+                    });
+                    sampled = null;
+                }
+                if (!tile.markSampled(generation)) return;
+                tile.setSeamEdges(columns.edgeMask, sampled == null);
+                publishBorder(pos, columns, sampled);
+                store.writeColumns(pos, ColumnModel.encode(columns));
+                store.write(pos, size, stamp, pixels);
+                lodPyramid.update(pos.x, pos.z, pixels);
+
+                NativeImage img;
+                RasterResult result;
+                if (style.gpuShading()) {
+                    // A whole data tile is smaller than most shaded sub-rectangles
+                    img = TerrainTexture.toImage(pos, columns);
+                    result = new RasterResult(tile, generation, TerrainTexture.STAMP, img, false, 0, 0, null);
+                } else {
+                    // Column bounds to pixels
+                    int px = style.blockPx();
+                    int x0 = (bounds & 0xFF) * px;
+                    int y0 = ((bounds >> 8) & 0xFF) * px;
+                    int x1 = (((bounds >> 16) & 0xFF) + 1) * px;
+                    int y1 = (((bounds >> 24) & 0xFF) + 1) * px;
+                    img = MinecraftStyleRenderer.toImage(pixels, size, x0, y0, x1 - x0, y1 - y0);
+                    CompactTile compact = CompactTile.encode(pixels, size);
+                    result = new RasterResult(tile, generation, stamp, img, true, x0, y0, compact);
+                }
+                if (!tile.markRastered(generation)) {
+                    img.close();
+                    return;
+                }
+                finished.add(result);
+                MapMetrics.RASTER.recordSince(start);
+                if (event.shouldCommit()) {
+                    event.chunkX = pos.x;
+                    event.chunkZ = pos.z;
+                    event.kind = "partial";
+                    event.bytes = img.getWidth() * img.getHeight() * 4L;
+                    event.commit();
+                }
+            } catch (Exception e) {
+                Dexmap.LOGGER.error("Failed to update chunk {}: {}", pos, e.getMessage());
+                tile.rasterFailed(generation);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }, () -> tile.rasterCancelled(generation, true));
+    }
+
+    /**
+     * Runs {@code read}, which samples the live world, until it gets a
+     * clean read. The client thread applies chunk and block packets while
+     * workers read the same sections, so a read can throw halfway through
+     * a palette resize or see a column mid-change; it is repeated if it
+     * threw or the chunk took a block change meanwhile. After
+     * {@link #SAMPLE_ATTEMPTS} a read that still throws fails the tile,
+     * while one raced by a steady stream of changes is kept: those changes
+     * queue their own partial re-render. Returns what {@code read} does.
+     */
+    private static int sampleWorld(ChunkData tile, int generation, IntSupplier read) {
+        for (int attempt = 1; ; attempt++) {
+            int edits = tile.getEdits();
+            try {
+                int result = read.getAsInt();
+                // A reloaded chunk starts a new generation; that result is dropped anyway
+                if (tile.getEdits() == edits || attempt >= SAMPLE_ATTEMPTS || tile.getGeneration() != generation) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (attempt >= SAMPLE_ATTEMPTS || tile.getGeneration() != generation) throw e;
+            }
+            MapMetrics.RESAMPLES.increment();
+            // Lets the client thread finish the change before reading again
+            Thread.yield();
+        }
+    }
+
+    private boolean schedule(ChunkPos pos, Runnable job, Runnable onCancel) {
+        inFlight.incrementAndGet();
+        if (!async) {
+            job.run();
+            return true;
+        }
+        try {
+            workers.submit(pos.x, pos.z, job, () -> {
+                inFlight.decrementAndGet();
+                onCancel.run();
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Drops the job still queued for a chunk, e.g. because it unloaded.
+     * Its tile is requested again the next time it is drawn.
+     */
+    public void cancel(int chunkX, int chunkZ) {
+        workers.cancel(chunkX, chunkZ);
+    }
+
+    /**
+     * Queues a demoted tile's compact copy for upload. Decoding takes
+     * microseconds, so it runs here on the render thread instead of a
+     * worker.
+     */
+    public void submitCompact(ChunkData tile, CompactTile compact) {
+        long start = System.nanoTime();
+        NativeImage img = compact.toImage();
+        MapMetrics.REHYDRATE.recordSince(start);
+        finished.add(new RasterResult(tile, tile.getGeneration(), tile.getStyleStamp(), img, false, 0, 0, compact));
+    }
+
+    /**
+     * Uploads finished tiles, closest to the upload focus first, until the
+     * per-frame time budget is spent; the rest wait for the next frame. At
+     * least one tile is uploaded per call so the backlog always drains.
+     * Call once per frame on the render thread.
+     */
+    public void processUploads() {
+        RasterResult r;
+        while ((r = finished.poll()) != null) {
+            ready.add(r);
+        }
+        int n = ready.size();
+        lastUploadCount = 0;
+        if (n == 0) return;
+
+        // Squared distance (as sortable float bits) above the index; ties keep arrival order
+        if (uploadOrder.length < n) uploadOrder = new long[Math.max(n, uploadOrder.length * 2)];
+        for (int i = 0; i < n; i++) {
+            ChunkPos pos = ready.get(i).tile.getPosition();
+            float dx = pos.x + 0.5f - focusX;
+            float dz = pos.z + 0.5f - focusZ;
+            uploadOrder[i] = ((long) Float.floatToIntBits(dx * dx + dz * dz) << 32) | i;
+        }
+        Arrays.sort(uploadOrder, 0, n);
+
+        long deadline = System.nanoTime() + uploadBudgetNanos;
+        int done = 0;
+        while (done < n && (done == 0 || System.nanoTime() < deadline)) {
+            int i = (int) uploadOrder[done++];
+            upload(ready.get(i));
+            ready.set(i, null);
+        }
+        if (done == n) {
+            ready.clear();
+        } else {
+            ready.removeIf(Objects::isNull);
+        }
+        lastUploadCount = done;
+    }
+
+    private void upload(RasterResult r) {
+        MapEvents.Upload event = new MapEvents.Upload();
+        event.begin();
+        long start = System.nanoTime();
+        // The image is closed by the upload
+        int width = r.image.getWidth();
+        int height = r.image.getHeight();
+        if (r.partial) {
+            r.tile.acceptPartialRaster(r.image, r.generation, r.style, r.offX, r.offY, r.compact);
+        } else {
+            r.tile.acceptRaster(r.image, r.generation, r.style, r.compact);
+        }
+        MapMetrics.UPLOAD.recordSince(start);
+        ChunkPos pos = r.tile.getPosition();
+        if (event.shouldCommit()) {
+            event.chunkX = pos.x;
+            event.chunkZ = pos.z;
+            event.width = width;
+            event.height = height;
+            event.bytes = width * height * 4L;
+            event.commit();
+        }
+        if (uploadListener != null) {
+            uploadListener.tileUploaded(pos.x, pos.z);
+        }
+    }
+
+    /** Chunk coordinates at the centre of the view that is being drawn; uploads near it go first. */
+    public void setUploadFocus(float chunkX, float chunkZ) {
+        this.focusX = chunkX;
+        this.focusZ = chunkZ;
+    }
+
+    /** The player's chunk coordinates; queued jobs near them run first. */
+    public void setPlayerFocus(float chunkX, float chunkZ) {
+        workers.setFocus(RasterScheduler.FOCUS_PLAYER, chunkX, chunkZ);
+    }
+
+    /**
+     * Chunk coordinates at the centre of the world map; while set, jobs
+     * near it run as early as jobs near the player.
+     */
+    public void setViewFocus(float chunkX, float chunkZ) {
+        workers.setFocus(RasterScheduler.FOCUS_VIEW, chunkX, chunkZ);
+    }
+
+    public void clearViewFocus() {
+        workers.clearFocus(RasterScheduler.FOCUS_VIEW);
+    }
+
+    /** Finished tiles still waiting for upload. */
+    public int getUploadBacklog() {
+        return ready.size() + finished.size();
+    }
+
+    /** Tiles uploaded by the last {@link #processUploads} call. */
+    public int getLastUploadCount() {
+        return lastUploadCount;
+    }
+
+    /** Notified on the render thread after each tile upload. */
+    public void setUploadListener(UploadListener listener) {
+        this.uploadListener = listener;
+    }
+
+    /**
+     * Stores a freshly sampled chunk's border and queues seam fixes for the
+     * neighbours it affects: every side whose heights changed, and on first
+     * publish the sides a neighbour had to shade without this chunk.
+     */
+    private void publishBorder(ChunkPos pos, ColumnBuffer columns, long[] sampled) {
+        boolean fresh = ribbons.get(pos.x, pos.z) == null;
+        int changed = ribbons.publish(pos, columns, sampled);
+        if (changed == 0) return;
+        if ((changed & ColumnBuffer.EDGE_NORTH) != 0)
+            seamFixes.add(new SeamFix(pos.x, pos.z - 1, ColumnBuffer.EDGE_SOUTH, fresh));
+        if ((changed & ColumnBuffer.EDGE_SOUTH) != 0)
+            seamFixes.add(new SeamFix(pos.x, pos.z + 1, ColumnBuffer.EDGE_NORTH, fresh));
+        if ((changed & ColumnBuffer.EDGE_WEST) != 0)
+            seamFixes.add(new SeamFix(pos.x - 1, pos.z, ColumnBuffer.EDGE_EAST, fresh));
+        if ((changed & ColumnBuffer.EDGE_EAST) != 0)
+            seamFixes.add(new SeamFix(pos.x + 1, pos.z, ColumnBuffer.EDGE_WEST, fresh));
+    }
+
+    /** Hands queued seam fixes to {@code sink}. Client thread only. */
+    public void drainSeamFixes(SeamSink sink) {
+        SeamFix f;
+        while ((f = seamFixes.poll()) != null) {
+            sink.seamChanged(f.chunkX, f.chunkZ, f.edge, f.firstPublish);
+        }
+    }
+
+    public BorderRibbons getBorderRibbons() {
+        return ribbons;
+    }
+
+    public LodPyramid getLodPyramid() {
+        return lodPyramid;
+    }
+
+    public MapStyle getStyle() {
+        return style;
+    }
+
+    /** {@link MapStyle#textureStamp} of the current style; cheap enough to check per tile per frame. */
+    public int getStyleStamp() {
+        return styleStamp;
+    }
+
+    /**
+     * Switches the style new jobs render with. Tiles already on screen keep
+     * their texture until they are drawn again and re-shaded; a resolution
+     * change also needs a new atlas, see {@link com.dexmap.DexmapClient}.
+     */
+    public void setStyle(MapStyle style) {
+        if (style.size() != this.style.size()) lodPyramid.setSize(style.size());
+        this.style = style;
+        this.styleStamp = style.textureStamp();
+    }
+
+    /** Raster jobs queued or running on the workers; replaced and cancelled jobs don't count. */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public int getPendingCount() {
+        return inFlight.get() + finished.size() + ready.size();
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        RasterResult r;
+        while ((r = finished.poll()) != null) {
+            r.image.close();
+        }
+        for (RasterResult pending : ready) {
+            pending.image.close();
+        }
+        ready.clear();
+        seamFixes.clear();
+        ribbons.clear();
+    }
+
+    public interface UploadListener {
+        void tileUploaded(int chunkX, int chunkZ);
+    }
+
+    public interface SeamSink {
+        /**
+         * The neighbour across {@code edge} of chunk (chunkX, chunkZ) has new
+         * border heights. {@code firstPublish} means it had none before, so
+         * a tile already shaded against the world on that side is current.
+         */
+        void seamChanged(int chunkX, int chunkZ, int edge, boolean firstPublish);
+    }
+
+    private record SeamFix(int chunkX, int chunkZ, int edge, boolean firstPublish) {}
+
+    private record RasterResult(
+            ChunkData tile, int generation, int style, NativeImage image, boolean partial, int offX, int offY,
+            CompactTile compact) {}
+}
@@ -0,0 +1,108 @@
+package com.dexmap.render;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.client.color.world.BiomeColors;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * {@link TerrainView} over a client world. Reads heights and blocks
+ * straight from the chunk's heightmaps and sections, remembering the last
+ * chunk so a run of columns resolves it once. Reused per thread through
+ * {@link ColumnBuffer}; {@link #bind} before each use.
+ */
+final class WorldTerrain implements TerrainView {
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+    private ClientWorld world;
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+
+    // Last chunk looked up; valid until the next bind
+    private boolean cached;
+    private int cachedX;
+    private int cachedZ;
+    private WorldChunk cachedChunk;
+
+    WorldTerrain bind(ClientWorld world) {
+        this.world = world;
+        cached = false;
+        cachedChunk = null;
+        return this;
+    }
+
+    /** Drops the world reference so an idle worker doesn't pin it. */
+    void release() {
+        world = null;
+        cached = false;
+        cachedChunk = null;
+    }
+
+    private WorldChunk chunk(int chunkX, int chunkZ) {
+        if (!cached || chunkX != cachedX || chunkZ != cachedZ) {
+            cachedChunk = world.getChunkManager().getWorldChunk(chunkX, chunkZ);
+            cachedX = chunkX;
+            cachedZ = chunkZ;
+            cached = true;
+        }
+        return cachedChunk;
+    }
+
+    @Override
+    public int getBottomY() {
+        return world.getBottomY();
+    }
+
+    @Override
+    public int getSeaLevel() {
+        return world.getSeaLevel();
+    }
+
+    @Override
+    public boolean isChunkLoaded(int chunkX, int chunkZ) {
+        return chunk(chunkX, chunkZ) != null;
+    }
+
+    @Override
+    public int getTopY(Heightmap.Type type, int x, int z) {
+        WorldChunk chunk = chunk(x >> 4, z >> 4);
+        // sampleHeightmap is "top - 1"
+        return chunk != null ? chunk.sampleHeightmap(type, x & 15, z & 15) + 1 : world.getTopY(type, x, z);
+    }
+
+    @Override
+    public BlockState getBlockState(int x, int y, int z) {
+        WorldChunk chunk = chunk(x >> 4, z >> 4);
+        if (chunk == null) return world.getBlockState(pos.set(x, y, z));
+        // Reads the section palette directly; outside the build height everything is air
+        ChunkSection[] sections = chunk.getSectionArray();
+        int index = chunk.getSectionIndex(y);
+        if (index < 0 || index >= sections.length) return AIR;
+        ChunkSection section = sections[index];
+        return section.isEmpty() ? AIR : section.getBlockState(x & 15, y & 15, z & 15);
+    }
+
+    @Override
+    public int getGrassColor(int x, int z) {
+        return BiomeColors.getGrassColor(world, pos.set(x, 0, z));
+    }
+
+    @Override
+    public int getFoliageColor(int x, int z) {
+        return BiomeColors.getFoliageColor(world, pos.set(x, 0, z));
+    }
+
+    @Override
+    public int getWaterColor(int x, int z) {
+        return BiomeColors.getWaterColor(world, pos.set(x, 0, z));
+    }
+
+    @Override
+    public int getBlockColor(BlockState state, int x, int y, int z) {
+        // Resolved once per state unless the block is tinted by position
+        return BlockColorCache.get(state, world, pos.set(x, y, z));
+    }
+}
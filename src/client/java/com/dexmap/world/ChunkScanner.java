@@ -1,11 +1,13 @@
 package com.dexmap.world;
 
 import com.dexmap.Dexmap;
+import com.dexmap.DexmapClient;
 import com.dexmap.data.ChunkData;
+import com.dexmap.data.LongTileMap;
 import com.dexmap.data.MapData;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import com.dexmap.data.TileStore;
+import com.dexmap.metrics.MapEvents;
+import com.dexmap.render.TileRasterizer;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.world.ClientWorld;
 import net.minecraft.entity.player.PlayerEntity;
@@ -13,53 +15,199 @@ import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.chunk.WorldChunk;
 
 public class ChunkScanner {
-    private final Map<ChunkPos, ChunkData> scannedChunks = new ConcurrentHashMap<>();
-    private final MapData mapData = new MapData();
-    private final Set<ChunkPos> loading = ConcurrentHashMap.newKeySet();
+    private final MapData mapData;
+    private final TileStore tileStore;
+    private final long blockUpdateDebounceMs;
+    // Chunks loading this close to the player (Chebyshev distance) are rasterized right away
+    private final int warmRadius;
+    // Tiles with changed block columns, waiting out the debounce; client thread only
+    private final LongTileMap<ChunkData> pendingUpdates = new LongTileMap<>();
+    private final LongTileMap.Visitor<ChunkData> flushIfDue = this::flushIfDue;
+    private final TileRasterizer.SeamSink onSeamChanged = this::onSeamChanged;
+    private long flushNow;
 
     private PlayerEntity lastPlayer;
+    private ClientWorld currentWorld;
+
+    public ChunkScanner(
+            TileStore tileStore, int tileSize, long tileCacheBytes, long compactCacheBytes, long blockUpdateDebounceMs,
+            int warmRadius) {
+        this.tileStore = tileStore;
+        this.blockUpdateDebounceMs = blockUpdateDebounceMs;
+        this.warmRadius = warmRadius;
+        int tileBytes = tileSize * tileSize * 4;
+        this.mapData = new MapData(tileCacheBytes, tileBytes, compactCacheBytes, this::onTileEvicted);
+    }
 
     public void onChunkLoad(ClientWorld world, WorldChunk chunk) {
+        MapEvents.ChunkScan event = new MapEvents.ChunkScan();
+        event.begin();
+        loadChunk(world, chunk);
+        if (event.shouldCommit()) {
+            event.chunkX = chunk.getPos().x;
+            event.chunkZ = chunk.getPos().z;
+            event.loaded = true;
+            event.commit();
+        }
+    }
+
+    private void loadChunk(ClientWorld world, WorldChunk chunk) {
         MinecraftClient client = MinecraftClient.getInstance();
         if (client.player == null || world != client.world) return;
+        // Chunk packets for a new world arrive before the next tick notices the switch
+        updateWorld(client, world);
 
         ChunkPos pos = chunk.getPos();
-        if (scannedChunks.containsKey(pos) || !loading.add(pos)) return;
+        ChunkData existing = mapData.getChunk(pos);
+        if (existing != null) {
+            // Known from earlier (or paged in from disk): re-raster from the live chunk,
+            // keeping the old tile on screen until the new one is ready
+            existing.invalidateTexture();
+            warmIfNear(client, world, existing);
+            return;
+        }
 
         try {
             ChunkData data = new ChunkData(pos);
-            // optionally warm texture so first draw is instant:
-            // data.getTextureId(world);
-
-            scannedChunks.put(pos, data);
             mapData.addChunk(data);
+            warmIfNear(client, world, data);
         } catch (Exception e) {
             Dexmap.LOGGER.error("Failed to add chunk {}: {}", pos, e.getMessage());
-        } finally {
-            loading.remove(pos);
         }
     }
 
+    /** Queues the raster now so the first draw is instant; the scheduler runs it by distance. */
+    private void warmIfNear(MinecraftClient client, ClientWorld world, ChunkData data) {
+        ChunkPos pos = data.getPosition();
+        int dx = pos.x - (client.player.getBlockX() >> 4);
+        int dz = pos.z - (client.player.getBlockZ() >> 4);
+        if (Math.max(Math.abs(dx), Math.abs(dz)) <= warmRadius) data.warm(world);
+    }
+
     public void onChunkUnload(ClientWorld world, WorldChunk chunk) {
+        MapEvents.ChunkScan event = new MapEvents.ChunkScan();
+        event.begin();
+        unloadChunk(chunk);
+        if (event.shouldCommit()) {
+            event.chunkX = chunk.getPos().x;
+            event.chunkZ = chunk.getPos().z;
+            event.loaded = false;
+            event.commit();
+        }
+    }
+
+    private void unloadChunk(WorldChunk chunk) {
         ChunkPos pos = chunk.getPos();
-        ChunkData data = scannedChunks.get(pos);
+        TileRasterizer rasterizer = DexmapClient.getInstance().getTileRasterizer();
+        // A queued raster would sample a chunk that is gone, or page in a tile nobody is looking at
+        rasterizer.cancel(pos.x, pos.z);
+        rasterizer.getBorderRibbons().remove(pos.x, pos.z);
+        ChunkData data = mapData.peekChunk(pos.x, pos.z);
         if (data == null) return;
 
         if (lastPlayer != null) {
             ChunkPos pc = new ChunkPos(lastPlayer.getBlockPos());
             int dist = Math.abs(pos.x - pc.x) + Math.abs(pos.z - pc.z);
-            if (dist > 10) data.dispose();
+            // Far away: drop it; the map pages it back in from the tile store when viewed
+            if (dist > 10 && data.isPersisted()) mapData.removeChunk(pos);
+        }
+    }
+
+    /**
+     * The cache let go of a tile's last in-memory image. Tiles of loaded
+     * chunks stay indexed (they page back in from disk when drawn again);
+     * anything else lives on only in the tile store.
+     */
+    private void onTileEvicted(ChunkData data) {
+        ChunkPos pos = data.getPosition();
+        if (currentWorld == null || !currentWorld.getChunkManager().isChunkLoaded(pos.x, pos.z)) {
+            mapData.unindex(data);
+        }
+    }
+
+    /**
+     * A block changed on the client (single update or part of a delta
+     * packet). Marks its column; bursts are coalesced into one partial
+     * re-raster per chunk per debounce interval. Client thread only.
+     */
+    public void onBlockChanged(int x, int z) {
+        ChunkData data = mapData.peekChunk(x >> 4, z >> 4);
+        if (data == null) return;
+        if (data.markColumnDirty(x & 15, z & 15, System.currentTimeMillis())) {
+            pendingUpdates.put(data.getPosition().toLong(), data);
+        }
+    }
+
+    /**
+     * A rasterized neighbour published new border heights; re-shade the
+     * matching edge strip of this tile with the same debounce as block
+     * changes. Client thread only.
+     */
+    private void onSeamChanged(int chunkX, int chunkZ, int edge, boolean firstPublish) {
+        ChunkData data = mapData.peekChunk(chunkX, chunkZ);
+        if (data == null) return;
+        // Shaded against the live neighbour already; its first ribbon holds the same heights
+        if (firstPublish && (data.getSeamEdges() & edge) != 0) return;
+        if (data.markSeamDirty(edge, System.currentTimeMillis())) {
+            pendingUpdates.put(data.getPosition().toLong(), data);
+        }
+    }
+
+    /** Re-rasters tiles whose changes have settled. Called every client tick. */
+    public void flushBlockUpdates() {
+        DexmapClient.getInstance().getTileRasterizer().drainSeamFixes(onSeamChanged);
+        if (pendingUpdates.isEmpty() || currentWorld == null) return;
+        flushNow = System.currentTimeMillis();
+        pendingUpdates.forEach(flushIfDue);
+    }
+
+    private void flushIfDue(int chunkX, int chunkZ, ChunkData data) {
+        if (flushNow - data.getDirtySince() < blockUpdateDebounceMs) return;
+        if (data.flushDirtyColumns(currentWorld)) {
+            pendingUpdates.remove(ChunkPos.toLong(chunkX, chunkZ));
         }
-        // keep entry for map history; remove if you want:
-        // scannedChunks.remove(pos);
     }
 
     public void updatePlayerPosition(PlayerEntity player) {
         this.lastPlayer = player;
     }
 
+    /** Called every tick; switches the tile store when the world or dimension changes. */
+    public void updateWorld(MinecraftClient client, ClientWorld world) {
+        if (world == currentWorld) return;
+        cleanup();
+        currentWorld = world;
+        if (world != null) {
+            tileStore.open(TileStore.directoryFor(client, world));
+        } else {
+            tileStore.close();
+        }
+    }
+
     public ChunkData getChunkData(ChunkPos pos) {
-        return scannedChunks.get(pos);
+        return mapData.getChunk(pos.x, pos.z);
+    }
+
+    public ChunkData getChunkData(int chunkX, int chunkZ) {
+        return mapData.getChunk(chunkX, chunkZ);
+    }
+
+    /**
+     * Like {@link #getChunkData}, but also pages in chunks explored in an
+     * earlier session from the tile store. Never blocks on disk.
+     */
+    public ChunkData getOrLoadChunkData(ChunkPos pos) {
+        return getOrLoadChunkData(pos.x, pos.z);
+    }
+
+    /** Allocation-free unless a tile is paged in. */
+    public ChunkData getOrLoadChunkData(int chunkX, int chunkZ) {
+        ChunkData data = mapData.getChunk(chunkX, chunkZ);
+        if (data != null || !tileStore.hasTile(chunkX, chunkZ)) return data;
+
+        data = new ChunkData(new ChunkPos(chunkX, chunkZ));
+        mapData.addChunk(data);
+        return data;
     }
 
     public MapData getMapData() {
@@ -67,9 +215,10 @@ public class ChunkScanner {
     }
 
     public void cleanup() {
-        scannedChunks.values().forEach(ChunkData::dispose);
-        scannedChunks.clear();
+        DexmapClient dexmap = DexmapClient.getInstance();
+        dexmap.getLodPyramid().clear(dexmap.getLodAtlas());
         mapData.clear();
-        loading.clear();
+        pendingUpdates.clear();
+        dexmap.getTileRasterizer().getBorderRibbons().clear();
     }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+package com.dexmap.headless;
+
+import com.dexmap.render.ChunkSnapshot;
+import com.dexmap.render.ColumnBuffer;
+import com.dexmap.render.MapStyle;
+import com.dexmap.render.MinecraftStyleRenderer;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Renders every chunk snapshot fixture headless, compares the stitched
+ * tiles with golden PNGs, then measures raster throughput over the same
+ * fixtures. Run through the {@code goldenTest} and {@code goldenUpdate}
+ * Gradle tasks; fixtures are captured in game with the (unbound by
+ * default) "Capture Map Test Fixture" key, and the synthetic one is
+ * written by {@link SyntheticFixture}. An empty fixture directory fails.
+ *
+ * Options: {@code --fixtures DIR --golden DIR --out DIR}, {@code --update}
+ * to rewrite the goldens instead of comparing, {@code --tolerance N} per
+ * colour channel, {@code --threads N} and {@code --seconds N} for the
+ * throughput run (0 skips it).
+ */
+public final class GoldenRunner {
+    // Fixed so goldens don't depend on the capturing client's video settings
+    static final int BLEND_RADIUS = 2;
+    // Goldens are rendered with the default settings, whatever the local config says
+    private static final MapStyle STYLE = MapStyle.DEFAULT;
+    private static final int TILE = STYLE.size();
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        Headless.bootstrap();
+
+        List<Path> fixtures = listFixtures(options.fixtures);
+        if (fixtures.isEmpty()) {
+            // A missing or emptied fixture directory must not pass as a green run
+            System.out.println("No fixtures in " + options.fixtures + " (goldenFixture writes the synthetic one)");
+            System.exit(1);
+        }
+        Files.createDirectories(options.out);
+
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+        int failed = 0;
+        for (Path fixture : fixtures) {
+            String name = fixture.getFileName().toString();
+            name = name.substring(0, name.length() - ChunkSnapshot.EXTENSION.length());
+            ChunkSnapshot snapshot = ChunkSnapshot.read(fixture);
+            snapshots.add(snapshot);
+
+            BufferedImage actual = render(snapshot);
+            Path golden = options.golden.resolve(name + ".png");
+            if (options.update) {
+                Files.createDirectories(options.golden);
+                ImageIO.write(actual, "png", golden.toFile());
+                System.out.println("updated  " + name);
+                continue;
+            }
+            if (!Files.exists(golden)) {
+                System.out.println("MISSING  " + name + " (run goldenUpdate to create " + golden + ")");
+                failed++;
+                continue;
+            }
+
+            BufferedImage expected = ImageIO.read(golden.toFile());
+            BufferedImage diff = new BufferedImage(actual.getWidth(), actual.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            long mismatched = compare(expected, actual, options.tolerance, diff);
+            if (mismatched == 0) {
+                System.out.println("ok       " + name);
+            } else {
+                failed++;
+                ImageIO.write(actual, "png", options.out.resolve(name + ".actual.png").toFile());
+                ImageIO.write(diff, "png", options.out.resolve(name + ".diff.png").toFile());
+                System.out.println("FAILED   " + name + ": " + mismatched + " pixels differ (see " + options.out + ")");
+            }
+        }
+
+        if (options.seconds > 0) {
+            throughput(snapshots, options);
+        }
+        if (failed > 0) {
+            System.out.println(failed + " of " + fixtures.size() + " fixtures failed");
+            System.exit(1);
+        }
+    }
+
+    private static List<Path> listFixtures(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(ChunkSnapshot.EXTENSION))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /** All loaded chunks of a fixture, stitched; unloaded chunks stay transparent. */
+    static BufferedImage render(ChunkSnapshot snapshot) {
+        int w = snapshot.getWidthChunks();
+        int d = snapshot.getDepthChunks();
+        BufferedImage image = new BufferedImage(w * TILE, d * TILE, BufferedImage.TYPE_INT_ARGB);
+        ColumnBuffer columns = ColumnBuffer.get();
+        int[] pixels = new int[TILE * TILE];
+        int[] row = new int[TILE];
+        for (int cz = 0; cz < d; cz++) {
+            for (int cx = 0; cx < w; cx++) {
+                int chunkX = snapshot.getMinChunkX() + cx;
+                int chunkZ = snapshot.getMinChunkZ() + cz;
+                if (!snapshot.isChunkLoaded(chunkX, chunkZ)) continue;
+                MinecraftStyleRenderer.rasterizeInto(
+                        snapshot, new ChunkPos(chunkX, chunkZ), BLEND_RADIUS, columns, null, STYLE, pixels);
+                for (int y = 0; y < TILE; y++) {
+                    for (int x = 0; x < TILE; x++) {
+                        row[x] = abgrToArgb(pixels[y * TILE + x]);
+                    }
+                    image.setRGB(cx * TILE, cz * TILE + y, TILE, 1, row, 0, TILE);
+                }
+            }
+        }
+        return image;
+    }
+
+    /** Counts pixels differing by more than {@code tolerance} in any channel; marks them red in {@code diff}. */
+    static long compare(BufferedImage expected, BufferedImage actual, int tolerance, BufferedImage diff) {
+        if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight()) {
+            return (long) actual.getWidth() * actual.getHeight();
+        }
+        long mismatched = 0;
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                boolean same = true;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs(((e >>> shift) & 0xFF) - ((a >>> shift) & 0xFF)) > tolerance) {
+                        same = false;
+                        break;
+                    }
+                }
+                if (same) {
+                    // Faded copy of the tile, so the differences stand out
+                    diff.setRGB(x, y, 0x40000000 | (a & 0x00FFFFFF));
+                } else {
+                    diff.setRGB(x, y, 0xFFFF0000);
+                    mismatched++;
+                }
+            }
+        }
+        return mismatched;
+    }
+
+    /**
+     * Rasterizes every loaded fixture chunk round-robin on {@code threads}
+     * workers for the configured time, after a one-second warm-up, and
+     * reports chunks per second overall and per core (one worker per core).
+     */
+    private static void throughput(List<ChunkSnapshot> snapshots, Options options) throws Exception {
+        List<ChunkSnapshot> owners = new ArrayList<>();
+        List<ChunkPos> chunks = new ArrayList<>();
+        for (ChunkSnapshot s : snapshots) {
+            for (int cz = 0; cz < s.getDepthChunks(); cz++) {
+                for (int cx = 0; cx < s.getWidthChunks(); cx++) {
+                    int x = s.getMinChunkX() + cx;
+                    int z = s.getMinChunkZ() + cz;
+                    if (!s.isChunkLoaded(x, z)) continue;
+                    owners.add(s);
+                    chunks.add(new ChunkPos(x, z));
+                }
+            }
+        }
+        if (chunks.isEmpty()) return;
+
+        int threads = options.threads;
+        AtomicLong rendered = new AtomicLong();
+        long warmupEnd = System.nanoTime() + 1_000_000_000L;
+        long end = warmupEnd + options.seconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int start = t * chunks.size() / threads;
+            Thread worker = new Thread(() -> {
+                ColumnBuffer columns = ColumnBuffer.get();
+                int[] pixels = new int[TILE * TILE];
+                long count = 0;
+                int i = start;
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    MinecraftStyleRenderer.rasterizeInto(
+                            owners.get(i), chunks.get(i), BLEND_RADIUS, columns, null, STYLE, pixels);
+                    if (now >= warmupEnd) count++;
+                    i = (i + 1) % chunks.size();
+                }
+                rendered.addAndGet(count);
+            }, "Dexmap Golden #" + (t + 1));
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) worker.join();
+
+        double perSecond = rendered.get() / (double) options.seconds;
+        double perCore = perSecond / threads;
+        System.out.printf("throughput: %.0f chunks/s on %d threads, %.0f chunks/s per core%n",
+                perSecond, threads, perCore);
+        String json = String.format(java.util.Locale.ROOT,
+                "{\"threads\": %d, \"seconds\": %d, \"chunks\": %d, \"chunksPerSecond\": %.1f, "
+                        + "\"chunksPerSecondPerCore\": %.1f}%n",
+                threads, options.seconds, rendered.get(), perSecond, perCore);
+        Files.writeString(options.out.resolve("throughput.json"), json);
+    }
+
+    private static int abgrToArgb(int abgr) {
+        return (abgr & 0xFF00FF00) | ((abgr & 0xFF) << 16) | ((abgr >> 16) & 0xFF);
+    }
+
+    private static final class Options {
+        Path fixtures = Path.of("src/headless/fixtures");
+        Path golden = Path.of("src/headless/golden");
+        Path out = Path.of("build/reports/golden");
+        boolean update;
+        int tolerance;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int seconds = 5;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--fixtures" -> o.fixtures = Path.of(args[++i]);
+                    case "--golden" -> o.golden = Path.of(args[++i]);
+                    case "--out" -> o.out = Path.of(args[++i]);
+                    case "--update" -> o.update = true;
+                    case "--tolerance" -> o.tolerance = Integer.parseInt(args[++i]);
+                    case "--threads" -> o.threads = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--seconds" -> o.seconds = Math.max(0, Integer.parseInt(args[++i]));
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            return o;
+        }
+    }
+
+    private GoldenRunner() {}
+}
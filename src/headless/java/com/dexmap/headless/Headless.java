@@ -0,0 +1,67 @@
+package com.dexmap.headless;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.Registry;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.registry.tag.BlockTags;
+import net.minecraft.registry.tag.FluidTags;
+import net.minecraft.registry.tag.TagKey;
+import net.minecraft.util.Identifier;
+
+/**
+ * Brings up just enough of the game to sample and shade tiles outside a
+ * client: the vanilla registries, plus the block and fluid tags the
+ * sampler checks, read from the vanilla data on the classpath (no data
+ * pack is loaded, so tags would otherwise be empty).
+ */
+public final class Headless {
+    private static boolean ready;
+
+    public static synchronized void bootstrap() {
+        if (ready) return;
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+        bindTag(Registries.BLOCK, BlockTags.LEAVES, "block");
+        bindTag(Registries.FLUID, FluidTags.WATER, "fluid");
+        ready = true;
+    }
+
+    private static <T> void bindTag(Registry<T> registry, TagKey<T> tag, String kind) {
+        List<RegistryEntry<T>> entries = new ArrayList<>();
+        collect(registry, kind, tag.id(), entries);
+        registry.populateTags(Map.of(tag, entries));
+    }
+
+    // Follows "#namespace:tag" references into the referenced tag files
+    private static <T> void collect(Registry<T> registry, String kind, Identifier id, List<RegistryEntry<T>> out) {
+        String path = "/data/" + id.getNamespace() + "/tags/" + kind + "/" + id.getPath() + ".json";
+        try (InputStream in = Headless.class.getResourceAsStream(path)) {
+            if (in == null) throw new IllegalStateException("Vanilla tag not on the classpath: " + path);
+            JsonElement root = JsonParser.parseReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            for (JsonElement value : root.getAsJsonObject().getAsJsonArray("values")) {
+                String ref = value.isJsonObject() ? value.getAsJsonObject().get("id").getAsString() : value.getAsString();
+                if (ref.startsWith("#")) {
+                    collect(registry, kind, Identifier.of(ref.substring(1)), out);
+                } else {
+                    out.add(registry.getEntry(registry.get(Identifier.of(ref))));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Headless() {}
+}
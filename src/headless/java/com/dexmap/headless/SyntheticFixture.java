@@ -0,0 +1,29 @@
+package com.dexmap.headless;
+
+import com.dexmap.render.ChunkSnapshot;
+import com.dexmap.render.SyntheticTerrain;
+import java.nio.file.Path;
+
+/**
+ * Writes the checked-in synthetic.dxsnap fixture: a 4x4 chunk capture of
+ * {@link SyntheticTerrain} with water, beaches, snow, tree canopies and
+ * biome edges. It needs no game client, so the golden tests always have a
+ * fixture; ones captured in game sit next to it. Run through the
+ * {@code goldenFixture} Gradle task, then {@code goldenUpdate}.
+ */
+public final class SyntheticFixture {
+    public static final String NAME = "synthetic";
+    private static final int MIN_CHUNK = 2;
+    private static final int CHUNKS = 4;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Path.of(args.length > 0 ? args[0] : "src/headless/fixtures");
+        Headless.bootstrap();
+        ChunkSnapshot snapshot = ChunkSnapshot.capture(new SyntheticTerrain(), MIN_CHUNK, MIN_CHUNK, CHUNKS, CHUNKS);
+        Path file = dir.resolve(NAME + ChunkSnapshot.EXTENSION);
+        snapshot.write(file);
+        System.out.println("wrote " + file);
+    }
+
+    private SyntheticFixture() {}
+}
@@ -0,0 +1,162 @@
+package com.dexmap.render;
+
+import com.dexmap.headless.Headless;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.world.Heightmap;
+
+/**
+ * Deterministic in-memory terrain for benchmarks and the synthetic golden
+ * fixture: rolling hills with lakes, beaches, snow caps and scattered tree
+ * canopies, plus blocky biome patches so blending has edges to smooth. The
+ * pattern repeats every {@link #SIZE} blocks and every chunk counts as
+ * loaded.
+ *
+ * Needs only the vanilla registries, not a game client.
+ */
+public final class SyntheticTerrain implements TerrainView {
+    public static final int SIZE = 256;
+    public static final int BOTTOM_Y = -64;
+    public static final int SEA_LEVEL = 63;
+
+    private static final int SNOW_LINE = 92;
+    private static final int CANOPY_HEIGHT = 4;
+
+    // Grass, foliage and water tints per synthetic biome
+    private static final int[][] BIOME_TINTS = {
+            {0x91BD59, 0x77AB2F, 0x3F76E4}, // plains
+            {0x79C05A, 0x59AE30, 0x3F76E4}, // forest
+            {0x6A7039, 0x4C763C, 0x617B64}, // swamp
+            {0x80B497, 0x60A17B, 0x3D57D6}, // taiga
+    };
+
+    static {
+        Headless.bootstrap();
+    }
+
+    // Solid terrain height and surface block per column, [z * SIZE + x]
+    private final int[] height = new int[SIZE * SIZE];
+    private final BlockState[] surface = new BlockState[SIZE * SIZE];
+    private final boolean[] tree = new boolean[SIZE * SIZE];
+    private final Map<BlockState, Integer> blockColors = new IdentityHashMap<>();
+
+    private final BlockState stone = Blocks.STONE.getDefaultState();
+    private final BlockState dirt = Blocks.DIRT.getDefaultState();
+    private final BlockState water = Blocks.WATER.getDefaultState();
+    private final BlockState leaves = Blocks.OAK_LEAVES.getDefaultState();
+    private final BlockState air = Blocks.AIR.getDefaultState();
+
+    public SyntheticTerrain() {
+        BlockState grass = Blocks.GRASS_BLOCK.getDefaultState();
+        BlockState sand = Blocks.SAND.getDefaultState();
+        BlockState gravel = Blocks.GRAVEL.getDefaultState();
+        BlockState snow = Blocks.SNOW_BLOCK.getDefaultState();
+
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                // Periodic over SIZE so the pattern tiles without seams
+                double a = 2 * Math.PI * x / SIZE;
+                double b = 2 * Math.PI * z / SIZE;
+                int h = (int) (66
+                        + 22 * Math.sin(a * 3) * Math.cos(b * 2)
+                        + 9 * Math.sin(a * 11 + b * 7)
+                        + 3 * Math.cos(b * 23))
+                        + (hash(x, z) & 1);
+                int i = z * SIZE + x;
+                height[i] = h;
+                if (h < SEA_LEVEL - 4) surface[i] = gravel;
+                else if (h < SEA_LEVEL + 2) surface[i] = sand;
+                else if (h >= SNOW_LINE) surface[i] = snow;
+                else surface[i] = grass;
+                tree[i] = surface[i] == grass && (hash(x >> 2, z >> 2) & 7) == 0 && (hash(x, z) & 3) != 0;
+            }
+        }
+
+        blockColors.put(stone, 0x707070);
+        blockColors.put(dirt, 0x976D4D);
+        blockColors.put(sand, 0xF7E9A3);
+        blockColors.put(gravel, 0x837E7E);
+        blockColors.put(snow, 0xFFFFFF);
+        blockColors.put(grass, 0x7FB238);
+    }
+
+    private int column(int x, int z) {
+        return Math.floorMod(z, SIZE) * SIZE + Math.floorMod(x, SIZE);
+    }
+
+    @Override
+    public int getBottomY() {
+        return BOTTOM_Y;
+    }
+
+    @Override
+    public int getSeaLevel() {
+        return SEA_LEVEL;
+    }
+
+    @Override
+    public boolean isChunkLoaded(int chunkX, int chunkZ) {
+        return true;
+    }
+
+    @Override
+    public int getTopY(Heightmap.Type type, int x, int z) {
+        int i = column(x, z);
+        int h = height[i];
+        int fluidTop = Math.max(h, SEA_LEVEL - 1);
+        return switch (type) {
+            case WORLD_SURFACE, WORLD_SURFACE_WG -> (tree[i] ? h + CANOPY_HEIGHT + 2 : fluidTop) + 1;
+            case MOTION_BLOCKING -> (tree[i] ? h + CANOPY_HEIGHT + 2 : fluidTop) + 1;
+            case MOTION_BLOCKING_NO_LEAVES -> fluidTop + 1;
+            case OCEAN_FLOOR, OCEAN_FLOOR_WG -> h + 1;
+        };
+    }
+
+    @Override
+    public BlockState getBlockState(int x, int y, int z) {
+        int i = column(x, z);
+        int h = height[i];
+        if (y < BOTTOM_Y) return air;
+        if (y == h) return surface[i];
+        if (y < h) return y > h - 4 ? dirt : stone;
+        if (y < SEA_LEVEL) return water;
+        if (tree[i] && y >= h + CANOPY_HEIGHT && y <= h + CANOPY_HEIGHT + 2) return leaves;
+        return air;
+    }
+
+    @Override
+    public int getGrassColor(int x, int z) {
+        return BIOME_TINTS[biome(x, z)][0];
+    }
+
+    @Override
+    public int getFoliageColor(int x, int z) {
+        return BIOME_TINTS[biome(x, z)][1];
+    }
+
+    @Override
+    public int getWaterColor(int x, int z) {
+        return BIOME_TINTS[biome(x, z)][2];
+    }
+
+    @Override
+    public int getBlockColor(BlockState state, int x, int y, int z) {
+        Integer rgb = blockColors.get(state);
+        return rgb != null ? rgb : 0x808080;
+    }
+
+    // 24-block biome cells
+    private static int biome(int x, int z) {
+        return hash(Math.floorDiv(x, 24), Math.floorDiv(z, 24)) & 3;
+    }
+
+    private static int hash(int x, int z) {
+        int h = x * 0x27D4EB2D ^ z * 0x165667B1;
+        h ^= h >>> 15;
+        h *= 0x85EBCA77;
+        h ^= h >>> 13;
+        return h;
+    }
+}
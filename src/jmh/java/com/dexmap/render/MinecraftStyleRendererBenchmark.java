@@ -0,0 +1,134 @@
+package com.dexmap.render;
+
+import java.util.concurrent.TimeUnit;
+import net.minecraft.util.math.ChunkPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Raster cost: a full chunk (sample + shade) at the default blend radius,
+ * the shading passes alone over pre-sampled columns, and a one-block
+ * partial re-shade. The *Pass benchmarks split shading up: each runs one
+ * pass over the 256 columns of a pre-sampled chunk with the inputs
+ * shadeChunk gives it, without the other passes or drawing the pixels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MinecraftStyleRendererBenchmark {
+    private static final int BLEND_RADIUS = 2;
+    private static final MapStyle STYLE = MapStyle.DEFAULT;
+
+    private SyntheticTerrain terrain;
+    private ChunkPos[] chunks;
+    private ColumnBuffer[] sampled;
+    private ColumnBuffer columns;
+    private int[] pixels;
+    private long[] changed;
+    private int[] shaded;
+    private int next;
+
+    @Setup
+    public void setup() {
+        terrain = new SyntheticTerrain();
+        int n = SyntheticTerrain.SIZE / 16;
+        chunks = new ChunkPos[n * n];
+        sampled = new ColumnBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new ChunkPos(i % n, i / n);
+            sampled[i] = new ColumnBuffer();
+            TerrainSampler.sampleColumns(terrain, chunks[i], null, null, BLEND_RADIUS, sampled[i]);
+        }
+        columns = new ColumnBuffer();
+        pixels = new int[STYLE.size() * STYLE.size()];
+        shaded = new int[ColumnBuffer.COLUMNS];
+        changed = ColumnMask.create();
+        ColumnMask.set(changed, 7, 7);
+    }
+
+    @Benchmark
+    public int[] rasterizeChunk() {
+        ChunkPos pos = chunks[next++ % chunks.length];
+        MinecraftStyleRenderer.rasterizeInto(terrain, pos, BLEND_RADIUS, columns, null, STYLE, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public int[] shadeChunk() {
+        int i = next++ % chunks.length;
+        MinecraftStyleRenderer.shadeChunk(chunks[i], sampled[i], STYLE, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public int[] hillshadePass() {
+        ColumnBuffer c = sampled[next++ % chunks.length];
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            int bx = i & 15, bz = i >> 4;
+            float nx = -(c.reliefAt(bx + 1, bz) - c.reliefAt(bx - 1, bz)) * 0.5f;
+            float nz = -(c.reliefAt(bx, bz + 1) - c.reliefAt(bx, bz - 1)) * 0.5f;
+            float ny = 2.0f;
+            float inv = 1.0f / (float) Math.max(Math.sqrt(nx * nx + ny * ny + nz * nz), 1e-5);
+            shaded[i] = TerrainSampler.applyHillshade(c.baseColor[i], nx * inv, ny * inv, nz * inv,
+                    STYLE.heightExaggeration());
+        }
+        return shaded;
+    }
+
+    @Benchmark
+    public int[] microStepPass() {
+        ColumnBuffer c = sampled[next++ % chunks.length];
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            int bx = i & 15, bz = i >> 4;
+            shaded[i] = TerrainSampler.applyMicroStepShading(c.baseColor[i],
+                    c.reliefY[i] - c.reliefAt(bx, bz - 1), c.reliefY[i] - c.reliefAt(bx - 1, bz));
+        }
+        return shaded;
+    }
+
+    @Benchmark
+    public int[] contourPass() {
+        ColumnBuffer c = sampled[next++ % chunks.length];
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            shaded[i] = TerrainSampler.applyContour(c.baseColor[i], c.reliefY[i], c.seaLevel, STYLE.contourStep());
+        }
+        return shaded;
+    }
+
+    @Benchmark
+    public int[] depthPass() {
+        ColumnBuffer c = sampled[next++ % chunks.length];
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            int rgb = c.baseColor[i];
+            // Only water columns are darkened
+            if (c.has(i, ColumnBuffer.WATER)) {
+                rgb = TerrainSampler.applyDepthDarkening(rgb, c.waterDepth(i), STYLE.waterDepthStrength());
+            }
+            shaded[i] = rgb;
+        }
+        return shaded;
+    }
+
+    @Benchmark
+    public int[] canopyPass() {
+        int n = next++ % chunks.length;
+        ColumnBuffer c = sampled[n];
+        int startX = chunks[n].getStartX(), startZ = chunks[n].getStartZ();
+        for (int i = 0; i < ColumnBuffer.COLUMNS; i++) {
+            shaded[i] = TerrainSampler.applyCanopyPattern(c.baseColor[i], startX + (i & 15), startZ + (i >> 4),
+                    c.has(i, ColumnBuffer.TREE_CANOPY), STYLE.canopyPatternStrength());
+        }
+        return shaded;
+    }
+
+    @Benchmark
+    public int reshadeBlock() {
+        ChunkPos pos = chunks[next++ % chunks.length];
+        return MinecraftStyleRenderer.reshadeColumns(terrain, pos, BLEND_RADIUS, columns, null, STYLE, pixels, changed, null);
+    }
+}
@@ -0,0 +1,258 @@
+package com.dexmap.render;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.Heightmap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * What {@link WorldTerrain}'s chunk-direct reads save. The synthetic
+ * terrain is copied into chunks with per-type heightmaps and paletted
+ * sections, then whole chunks are sampled through two views of it:
+ * "perCall" resolves the chunk on every height and block read, the way
+ * World.getTopY and World.getBlockState do; "chunkDirect" mirrors
+ * WorldTerrain, keeping the last chunk and reading its heightmaps and
+ * section palettes. The chunk lookup here is a bare array index, cheaper
+ * than the client chunk manager's, so the gap is a lower bound.
+ *
+ * No biome blend, so tint lookups don't dilute the difference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TerrainLookupBenchmark {
+    @Param({"perCall", "chunkDirect"})
+    public String lookup;
+
+    private TerrainView view;
+    private ChunkPos[] chunks;
+    private ColumnBuffer columns;
+    private int next;
+
+    @Setup
+    public void setup() {
+        SyntheticTerrain terrain = new SyntheticTerrain();
+        ChunkedWorld world = new ChunkedWorld(terrain);
+        view = lookup.equals("perCall") ? new PerCallTerrain(world, terrain) : new ChunkDirectTerrain(world, terrain);
+        chunks = new ChunkPos[ChunkedWorld.CHUNKS * ChunkedWorld.CHUNKS];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new ChunkPos(i % ChunkedWorld.CHUNKS, i / ChunkedWorld.CHUNKS);
+        }
+        columns = new ColumnBuffer();
+    }
+
+    @Benchmark
+    public void sampleChunk(Blackhole bh) {
+        ChunkPos pos = chunks[next++ % chunks.length];
+        TerrainSampler.sampleColumns(view, pos, null, null, 0, columns);
+        bh.consume(columns.baseColor);
+    }
+
+    /** The synthetic terrain stored the way a client world holds it, wrapping like the original. */
+    static final class ChunkedWorld {
+        static final int CHUNKS = SyntheticTerrain.SIZE / 16;
+        static final int SECTIONS = 24;
+        static final int TOP_Y = SyntheticTerrain.BOTTOM_Y + SECTIONS * 16;
+        static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+        private final Chunk[] chunks = new Chunk[CHUNKS * CHUNKS];
+
+        ChunkedWorld(SyntheticTerrain terrain) {
+            for (int cz = 0; cz < CHUNKS; cz++) {
+                for (int cx = 0; cx < CHUNKS; cx++) {
+                    chunks[cz * CHUNKS + cx] = new Chunk(terrain, cx, cz);
+                }
+            }
+        }
+
+        Chunk getChunk(int chunkX, int chunkZ) {
+            return chunks[Math.floorMod(chunkZ, CHUNKS) * CHUNKS + Math.floorMod(chunkX, CHUNKS)];
+        }
+
+        // As World.getTopY: find the chunk, then read its heightmap
+        int getTopY(Heightmap.Type type, int x, int z) {
+            return getChunk(x >> 4, z >> 4).sampleHeightmap(type, x & 15, z & 15) + 1;
+        }
+
+        // As World.getBlockState: height check, find the chunk, then its section
+        BlockState getBlockState(int x, int y, int z) {
+            if (y < SyntheticTerrain.BOTTOM_Y || y >= TOP_Y) return AIR;
+            Section section = getChunk(x >> 4, z >> 4).sections[(y - SyntheticTerrain.BOTTOM_Y) >> 4];
+            return section.isEmpty() ? AIR : section.get(x & 15, y & 15, z & 15);
+        }
+    }
+
+    static final class Chunk {
+        // "Top - 1" per column and heightmap type, like WorldChunk.sampleHeightmap
+        private final int[][] heightmaps = new int[Heightmap.Type.values().length][256];
+        final Section[] sections = new Section[ChunkedWorld.SECTIONS];
+
+        Chunk(SyntheticTerrain terrain, int chunkX, int chunkZ) {
+            int startX = chunkX << 4, startZ = chunkZ << 4;
+            for (Heightmap.Type type : Heightmap.Type.values()) {
+                for (int i = 0; i < 256; i++) {
+                    heightmaps[type.ordinal()][i] = terrain.getTopY(type, startX + (i & 15), startZ + (i >> 4)) - 1;
+                }
+            }
+            for (int s = 0; s < sections.length; s++) {
+                sections[s] = new Section(terrain, startX, SyntheticTerrain.BOTTOM_Y + s * 16, startZ);
+            }
+        }
+
+        int sampleHeightmap(Heightmap.Type type, int x, int z) {
+            return heightmaps[type.ordinal()][z << 4 | x];
+        }
+
+        int getSectionIndex(int y) {
+            return (y - SyntheticTerrain.BOTTOM_Y) >> 4;
+        }
+    }
+
+    static final class Section {
+        private final BlockState[] palette;
+        private final byte[] states = new byte[4096];
+        private final boolean empty;
+
+        Section(SyntheticTerrain terrain, int startX, int startY, int startZ) {
+            Map<BlockState, Integer> ids = new IdentityHashMap<>();
+            ids.put(ChunkedWorld.AIR, 0);
+            for (int i = 0; i < states.length; i++) {
+                BlockState state = terrain.getBlockState(startX + (i & 15), startY + (i >> 8), startZ + ((i >> 4) & 15));
+                states[i] = (byte) (int) ids.computeIfAbsent(state, s -> ids.size());
+            }
+            palette = new BlockState[ids.size()];
+            ids.forEach((state, id) -> palette[id] = state);
+            empty = palette.length == 1;
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        BlockState get(int x, int y, int z) {
+            return palette[states[y << 8 | z << 4 | x] & 0xFF];
+        }
+    }
+
+    /** Every read goes through the world, as sampling did before the chunk-direct path. */
+    static final class PerCallTerrain extends TintsFrom {
+        private final ChunkedWorld world;
+
+        PerCallTerrain(ChunkedWorld world, SyntheticTerrain tints) {
+            super(tints);
+            this.world = world;
+        }
+
+        @Override
+        public boolean isChunkLoaded(int chunkX, int chunkZ) {
+            return world.getChunk(chunkX, chunkZ) != null;
+        }
+
+        @Override
+        public int getTopY(Heightmap.Type type, int x, int z) {
+            return world.getTopY(type, x, z);
+        }
+
+        @Override
+        public BlockState getBlockState(int x, int y, int z) {
+            return world.getBlockState(x, y, z);
+        }
+    }
+
+    /** Same lookups as {@link WorldTerrain}. */
+    static final class ChunkDirectTerrain extends TintsFrom {
+        private final ChunkedWorld world;
+        private boolean cached;
+        private int cachedX;
+        private int cachedZ;
+        private Chunk cachedChunk;
+
+        ChunkDirectTerrain(ChunkedWorld world, SyntheticTerrain tints) {
+            super(tints);
+            this.world = world;
+        }
+
+        private Chunk chunk(int chunkX, int chunkZ) {
+            if (!cached || chunkX != cachedX || chunkZ != cachedZ) {
+                cachedChunk = world.getChunk(chunkX, chunkZ);
+                cachedX = chunkX;
+                cachedZ = chunkZ;
+                cached = true;
+            }
+            return cachedChunk;
+        }
+
+        @Override
+        public boolean isChunkLoaded(int chunkX, int chunkZ) {
+            return chunk(chunkX, chunkZ) != null;
+        }
+
+        @Override
+        public int getTopY(Heightmap.Type type, int x, int z) {
+            Chunk chunk = chunk(x >> 4, z >> 4);
+            return chunk != null ? chunk.sampleHeightmap(type, x & 15, z & 15) + 1 : world.getTopY(type, x, z);
+        }
+
+        @Override
+        public BlockState getBlockState(int x, int y, int z) {
+            Chunk chunk = chunk(x >> 4, z >> 4);
+            if (chunk == null) return world.getBlockState(x, y, z);
+            Section[] sections = chunk.sections;
+            int index = chunk.getSectionIndex(y);
+            if (index < 0 || index >= sections.length) return ChunkedWorld.AIR;
+            Section section = sections[index];
+            return section.isEmpty() ? ChunkedWorld.AIR : section.get(x & 15, y & 15, z & 15);
+        }
+    }
+
+    // Tints, colors and world constants come straight from the synthetic terrain in both views
+    abstract static class TintsFrom implements TerrainView {
+        private final SyntheticTerrain tints;
+
+        TintsFrom(SyntheticTerrain tints) {
+            this.tints = tints;
+        }
+
+        @Override
+        public int getBottomY() {
+            return SyntheticTerrain.BOTTOM_Y;
+        }
+
+        @Override
+        public int getSeaLevel() {
+            return SyntheticTerrain.SEA_LEVEL;
+        }
+
+        @Override
+        public int getGrassColor(int x, int z) {
+            return tints.getGrassColor(x, z);
+        }
+
+        @Override
+        public int getFoliageColor(int x, int z) {
+            return tints.getFoliageColor(x, z);
+        }
+
+        @Override
+        public int getWaterColor(int x, int z) {
+            return tints.getWaterColor(x, z);
+        }
+
+        @Override
+        public int getBlockColor(BlockState state, int x, int y, int z) {
+            return tints.getBlockColor(state, x, y, z);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.dexmap.render;
+
+import java.util.concurrent.TimeUnit;
+import net.minecraft.util.math.ChunkPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Sampling cost: one column through the single-column path, and whole
+ * chunks (including the biome blend) at every blend radius the game
+ * offers. Successive calls walk different chunks of the synthetic terrain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TerrainSamplerBenchmark {
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7"})
+    public int blendRadius;
+
+    private SyntheticTerrain terrain;
+    private ChunkPos[] chunks;
+    private ColumnBuffer columns;
+    private int next;
+    private int column;
+
+    @Setup
+    public void setup() {
+        terrain = new SyntheticTerrain();
+        int n = SyntheticTerrain.SIZE / 16;
+        chunks = new ChunkPos[n * n];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new ChunkPos(i % n, i / n);
+        }
+        columns = new ColumnBuffer();
+    }
+
+    @Benchmark
+    public TerrainSampler.SurfaceInfo sampleColumn() {
+        int c = column++ & 0xFFFF;
+        return TerrainSampler.sample(terrain, c & 0xFF, c >> 8, blendRadius);
+    }
+
+    @Benchmark
+    public void sampleChunk(Blackhole bh) {
+        ChunkPos pos = chunks[next++ % chunks.length];
+        TerrainSampler.sampleColumns(terrain, pos, null, null, blendRadius, columns);
+        bh.consume(columns.baseColor);
+    }
+}